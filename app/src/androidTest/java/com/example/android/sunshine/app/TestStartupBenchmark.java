@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Arrays;
+
+/*
+    Launches MainActivity over and over and reports percentiles of the StartupTrace timings:
+    how long until the first forecast row is bound, how long the forecast loader takes, and
+    what the sync account setup costs.  The numbers are only logged, look for the
+    TestStartupBenchmark tag in logcat, next to the time initializeSyncAdapter blocks its
+    caller now that the account setup runs in the background.
+
+    The test runs in the app's process, so a "cold" start here is MainActivity being created
+    with the provider's database closed beforehand; process creation itself is not included.
+    For that, use "adb shell am start -W -S" on a device without the test running.
+ */
+public class TestStartupBenchmark extends InstrumentationTestCase {
+
+    public static final String LOG_TAG = TestStartupBenchmark.class.getSimpleName();
+
+    private static final int WARMUP_LAUNCHES = 2;
+    private static final int LAUNCHES = 10;
+    private static final long LAUNCH_TIMEOUT_MILLIS = 10000;
+
+    private static final String[] REPORTED = {
+            StartupTrace.TIME_TO_FORECAST,
+            StartupTrace.MAIN_ON_CREATE,
+            StartupTrace.SYNC_ACCOUNT_SETUP,
+            StartupTrace.FORECAST_CREATE_LOADER,
+            StartupTrace.FORECAST_LOAD,
+            StartupTrace.FORECAST_FIRST_BIND
+    };
+
+    private Context mContext;
+    private String mSavedLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        TestUtilities.deleteAllRecords(mContext);
+
+        // Show a known forecast, like the one a sync would have left behind.
+        mSavedLocation = TestUtilities.overridePreferredLocation(mContext);
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        TestUtilities.bulkInsertDays(mContext, locationRowId, 14);
+        ForecastSnapshotFile.write(mContext, ForecastSnapshot.get(mContext));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        TestUtilities.restorePreferredLocation(mContext, mSavedLocation);
+        super.tearDown();
+    }
+
+    public void testSyncAccountSetupLeavesMainThread() {
+        // Forget that this version already set up its account.
+        String versionKey = mContext.getString(R.string.pref_sync_bootstrap_version_key);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .remove(versionKey).commit();
+        StartupTrace.reset();
+
+        long start = System.nanoTime();
+        SunshineSyncAdapter.initializeSyncAdapter(mContext);
+        long callNanos = System.nanoTime() - start;
+
+        long deadline = SystemClock.elapsedRealtime() + LAUNCH_TIMEOUT_MILLIS;
+        while (StartupTrace.getDurationNanos(StartupTrace.SYNC_BOOTSTRAP) < 0
+                && SystemClock.elapsedRealtime() < deadline) {
+            SystemClock.sleep(10);
+        }
+        assertTrue("Error: The sync account was never set up",
+                SunshineSyncAdapter.isSyncAdapterInitialized(mContext));
+        long bootstrapNanos = StartupTrace.getDurationNanos(StartupTrace.SYNC_BOOTSTRAP);
+
+        // Once done, only the account is checked, and that off the main thread.
+        start = System.nanoTime();
+        SunshineSyncAdapter.initializeSyncAdapter(mContext);
+        long cachedNanos = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, "Sync account setup: " + bootstrapNanos / 1000
+                + "us in the background, initializeSyncAdapter blocked its caller for "
+                + callNanos / 1000 + "us on first run and " + cachedNanos / 1000
+                + "us once set up");
+    }
+
+    public void testColdStart() {
+        runLaunches("Cold start", true);
+    }
+
+    public void testWarmStart() {
+        runLaunches("Warm start", false);
+    }
+
+    private void runLaunches(String label, boolean cold) {
+        for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+            launch(cold);
+        }
+
+        long[][] samples = new long[REPORTED.length][LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            launch(cold);
+            for (int section = 0; section < REPORTED.length; section++) {
+                samples[section][i] = StartupTrace.getDurationNanos(REPORTED[section]);
+            }
+        }
+
+        for (int section = 0; section < REPORTED.length; section++) {
+            long[] sorted = samples[section];
+            Arrays.sort(sorted);
+            Log.d(LOG_TAG, label + ", " + REPORTED[section] + " over " + LAUNCHES
+                    + " launches: p50 " + percentileMicros(sorted, 50)
+                    + "us, p90 " + percentileMicros(sorted, 90)
+                    + "us, max " + percentileMicros(sorted, 100) + "us");
+        }
+    }
+
+    // Launches MainActivity and waits until it has bound its first forecast row and its loader
+    // has delivered.
+    private void launch(boolean cold) {
+        if (cold) {
+            closeDatabase();
+        }
+        StartupTrace.reset();
+
+        Intent intent = new Intent(mContext, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        Activity activity = getInstrumentation().startActivitySync(intent);
+        long deadline = SystemClock.elapsedRealtime() + LAUNCH_TIMEOUT_MILLIS;
+        while ((StartupTrace.getDurationNanos(StartupTrace.TIME_TO_FORECAST) < 0
+                || StartupTrace.getDurationNanos(StartupTrace.FORECAST_LOAD) < 0)
+                && SystemClock.elapsedRealtime() < deadline) {
+            getInstrumentation().waitForIdleSync();
+            SystemClock.sleep(10);
+        }
+        activity.finish();
+        getInstrumentation().waitForIdleSync();
+
+        assertTrue("Error: The forecast was not shown within " + LAUNCH_TIMEOUT_MILLIS + "ms",
+                StartupTrace.getDurationNanos(StartupTrace.TIME_TO_FORECAST) >= 0);
+    }
+
+    // Closes the provider's database, so that the next query has to open it again.
+    private void closeDatabase() {
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        ContentProvider provider = client.getLocalContentProvider();
+        if (provider != null) {
+            provider.shutdown();
+        }
+        client.release();
+    }
+
+    // Nearest-rank percentile of sorted samples.
+    private static long percentileMicros(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1000;
+    }
+}
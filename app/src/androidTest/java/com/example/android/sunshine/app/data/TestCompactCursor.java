@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that compact cursors read back exactly like the SQLite cursors they replace, and
+    benchmarks the two for the ForecastFragment query.  The benchmark numbers are only logged,
+    look for the TestCompactCursor tag in logcat.
+ */
+public class TestCompactCursor extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestCompactCursor.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 200;
+    // How many cursors to keep open at once when measuring what holding them costs.
+    private static final int HELD_CURSORS = 20;
+
+    // The same columns ForecastFragment asks for.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private Uri mForecastUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long today = TestUtilities.bulkInsertDays(mContext, locationRowId, 14);
+
+        mForecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, today);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    private Cursor queryForecast(Uri uri) {
+        return mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testCompactCursorMatchesSqliteCursor() {
+        Cursor expected = queryForecast(mForecastUri);
+        Cursor actual = queryForecast(WeatherContract.buildCompactUri(mForecastUri));
+        assertTrue("Error: The compact flag was ignored", actual instanceof CompactCursor);
+
+        assertEquals(14, actual.getCount());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getColumnCount(), actual.getColumnCount());
+        for (int column = 0; column < expected.getColumnCount(); column++) {
+            assertEquals(expected.getColumnName(column), actual.getColumnName(column));
+        }
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                String name = expected.getColumnName(column);
+                assertEquals(name, expected.getType(column), actual.getType(column));
+                assertEquals(name, expected.getString(column), actual.getString(column));
+                assertEquals(name, expected.getLong(column), actual.getLong(column));
+                assertEquals(name, expected.getDouble(column), actual.getDouble(column));
+            }
+        }
+        assertFalse(actual.moveToNext());
+        expected.close();
+        actual.close();
+    }
+
+    public void testColumnsWidenAcrossRows() {
+        MatrixCursor source = new MatrixCursor(new String[]{"number", "mixed", "empty"});
+        source.addRow(new Object[]{1L, 2L, null});
+        source.addRow(new Object[]{2.5, "text", null});
+        source.addRow(new Object[]{null, 3L, null});
+
+        CompactCursor cursor = new CompactCursor(source);
+        source.close();
+        assertEquals(3, cursor.getCount());
+
+        assertTrue(cursor.moveToFirst());
+        assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(0));
+        assertEquals(1.0, cursor.getDouble(0));
+        assertEquals("2", cursor.getString(1));
+        assertTrue(cursor.isNull(2));
+        assertNull(cursor.getString(2));
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(2, cursor.getInt(0));
+        assertEquals("text", cursor.getString(1));
+        assertEquals(0, cursor.getLong(1));
+
+        assertTrue(cursor.moveToNext());
+        assertTrue(cursor.isNull(0));
+        assertEquals(Cursor.FIELD_TYPE_NULL, cursor.getType(0));
+        assertEquals(3, cursor.getLong(1));
+        cursor.close();
+    }
+
+    public void testCompactCursorBenchmark() {
+        Uri compactUri = WeatherContract.buildCompactUri(mForecastUri);
+
+        // Warm both code paths up so that we don't measure class loading or the JIT.
+        for (int i = 0; i < 20; i++) {
+            readAndClose(queryForecast(mForecastUri));
+            readAndClose(queryForecast(compactUri));
+        }
+
+        long sqliteMillis = timeQueries(mForecastUri);
+        long compactMillis = timeQueries(compactUri);
+
+        long sqlitePssKb = measureHeldPss(mForecastUri);
+        long compactPssKb = measureHeldPss(compactUri);
+
+        Log.d(LOG_TAG, BENCHMARK_ITERATIONS + " forecast queries: SQLiteCursor " + sqliteMillis
+                + "ms, CompactCursor " + compactMillis + "ms");
+        Log.d(LOG_TAG, HELD_CURSORS + " open forecast cursors: SQLiteCursor +" + sqlitePssKb
+                + "kB PSS, CompactCursor +" + compactPssKb + "kB PSS");
+    }
+
+    // Times a query followed by the reads ForecastAdapter does for every row.
+    private long timeQueries(Uri uri) {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            readAndClose(queryForecast(uri));
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    private long measureHeldPss(Uri uri) {
+        Runtime.getRuntime().gc();
+        long before = getTotalPss();
+        Cursor[] cursors = new Cursor[HELD_CURSORS];
+        for (int i = 0; i < HELD_CURSORS; i++) {
+            cursors[i] = queryForecast(uri);
+            // Like a loader, make sure the rows have actually been loaded.
+            cursors[i].getCount();
+        }
+        long after = getTotalPss();
+        for (Cursor cursor : cursors) {
+            cursor.close();
+        }
+        return after - before;
+    }
+
+    private static long getTotalPss() {
+        Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(memoryInfo);
+        return memoryInfo.getTotalPss();
+    }
+
+    private static void readAndClose(Cursor cursor) {
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+            cursor.getLong(1);
+            cursor.getString(2);
+            cursor.getDouble(3);
+            cursor.getDouble(4);
+            cursor.getString(5);
+            cursor.getInt(6);
+        }
+        cursor.close();
+    }
+}
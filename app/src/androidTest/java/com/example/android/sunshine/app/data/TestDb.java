@@ -16,11 +16,13 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
 import java.util.HashSet;
+import java.util.TreeSet;
 
 public class TestDb extends AndroidTestCase {
 
@@ -55,6 +57,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HourlyEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -177,6 +180,186 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        Checks that each of the provider's weather/location join queries seeks an index on the
+        weather table instead of scanning it, and that the forecast list query, which is the
+        one the main screen runs, is answered straight from the covering index without a sort.
+     */
+    public void testWeatherQueriesUseIndexes() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // The same columns ForecastFragment asks for.
+        String[] forecastColumns = {
+                WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG
+        };
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        String plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                forecastColumns, WeatherProvider.sLocationSettingWithStartDateSelection,
+                sortOrder), "99705", "1419033600");
+        assertTrue("Error: The forecast list query should only read the covering index: " + plan,
+                plan.contains("COVERING INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: The forecast list query should not need a sort: " + plan,
+                plan.contains("TEMP B-TREE"));
+
+        plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                null, WeatherProvider.sLocationSettingSelection, sortOrder), "99705");
+        assertTrue("Error: The location query should use the location/date index: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: The location query scans the weather table: " + plan,
+                scansWeatherTable(plan));
+
+        plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                null, WeatherProvider.sLocationSettingAndDaySelection, null),
+                "99705", "1419033600");
+        assertFalse("Error: The location and date query scans the weather table: " + plan,
+                scansWeatherTable(plan));
+
+        dbHelper.close();
+    }
+
+    // Returns the detail column of every step of the plan, one step per line.
+    private static String explainQueryPlan(SQLiteDatabase db, String sql, String... args) {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        int detailIndex = c.getColumnIndex("detail");
+        StringBuilder plan = new StringBuilder();
+        while (c.moveToNext()) {
+            plan.append(c.getString(detailIndex)).append('\n');
+        }
+        c.close();
+        return plan.toString();
+    }
+
+    // Older SQLite releases say "SCAN TABLE weather", newer ones just "SCAN weather".
+    private static boolean scansWeatherTable(String plan) {
+        String table = WeatherContract.WeatherEntry.TABLE_NAME;
+        for (String step : plan.split("\n")) {
+            if (step.startsWith("SCAN TABLE " + table) || step.startsWith("SCAN " + table)) {
+                String rest = step.substring(step.indexOf(table) + table.length());
+                if (rest.isEmpty() || rest.startsWith(" ")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // The schema exactly as version 2 shipped it.  Never edit these to follow later changes:
+    // they are what the migrations have to upgrade from.
+    private static final String[] VERSION_2_SCHEMA = {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT,location_id INTEGER NOT NULL, " +
+                    "date INTEGER NOT NULL, short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                    "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL,  " +
+                    "FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+                    "UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+
+    /*
+        Upgrades a version 2 database holding a location and a forecast, and checks that both rows
+        survive and that the result has the same tables, columns and indexes as a new database.
+     */
+    public void testUpgradeFromVersion2KeepsRows() {
+        String freshSchema = describeSchema();
+        deleteTheDatabase();
+
+        SQLiteDatabase db = createDatabase(2, VERSION_2_SCHEMA);
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                locationValues);
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        db.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: Location lost during upgrade", cursor, locationValues);
+        cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        TestUtilities.validateCursor("Error: Forecast lost during upgrade", cursor, weatherValues);
+        dbHelper.close();
+
+        assertEquals("Error: The upgraded schema differs from a newly created one",
+                freshSchema, describeSchema());
+    }
+
+    /*
+        Databases older than the oldest migratable version are recreated empty.
+     */
+    public void testUpgradeFromVersion1Recreates() {
+        String freshSchema = describeSchema();
+        deleteTheDatabase();
+
+        SQLiteDatabase db = createDatabase(1,
+                "CREATE TABLE weather (_id INTEGER PRIMARY KEY, date TEXT NOT NULL);",
+                "INSERT INTO weather (date) VALUES ('20141220');");
+        db.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertEquals("Error: Version 1 rows should have been discarded", 0, cursor.getCount());
+        cursor.close();
+        dbHelper.close();
+
+        assertEquals(freshSchema, describeSchema());
+    }
+
+    private SQLiteDatabase createDatabase(int version, String... statements) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    // Lists the tables with their columns, and the indexes, of the database WeatherDbHelper
+    // opens, in a stable order.
+    private String describeSchema() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        TreeSet<String> schema = new TreeSet<String>();
+        Cursor c = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        while (c.moveToNext()) {
+            String type = c.getString(0);
+            String name = c.getString(1);
+            schema.add(type + " " + name);
+            if ("table".equals(type)) {
+                Cursor columns = db.rawQuery("PRAGMA table_info(" + name + ")", null);
+                int nameIndex = columns.getColumnIndex("name");
+                int typeIndex = columns.getColumnIndex("type");
+                while (columns.moveToNext()) {
+                    schema.add(name + "." + columns.getString(nameIndex) + " "
+                            + columns.getString(typeIndex));
+                }
+                columns.close();
+            }
+        }
+        c.close();
+        dbHelper.close();
+        return schema.toString();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    private String mSavedLocation;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        mSavedLocation = TestUtilities.overridePreferredLocation(mContext);
+
+        mLocationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        TestUtilities.restorePreferredLocation(mContext, mSavedLocation);
+        super.tearDown();
+    }
+
+    public void testSnapshotFollowsProviderWrites() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = new ContentValues[3];
+        // Yesterday is stored but must not show up in the snapshot.
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, today + (i - 1) * MILLISECONDS_IN_A_DAY);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 70 + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.get(mContext);
+        assertEquals(TestUtilities.TEST_LOCATION, snapshot.getLocationSetting());
+        assertEquals("Error: The snapshot should start today", 2, snapshot.size());
+        assertEquals(today, snapshot.getDate(0));
+        assertEquals(0, snapshot.indexOfDate(today));
+        assertEquals(71.0, snapshot.getMaxTemp(0));
+        assertEquals(72.0, snapshot.getMaxTemp(1));
+        assertEquals("Asteroids", snapshot.getShortDesc(1));
+        assertTrue(snapshot.indexOfDate(today - MILLISECONDS_IN_A_DAY) < 0);
+
+        assertSame("Error: Without writes the snapshot should be reused",
+                snapshot, ForecastSnapshot.get(mContext));
+
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(today)});
+
+        ForecastSnapshot updated = ForecastSnapshot.get(mContext);
+        assertNotSame("Error: A provider write should invalidate the snapshot",
+                snapshot, updated);
+        assertEquals(99.5, updated.getMaxTemp(0));
+        // The old snapshot is immutable.
+        assertEquals(71.0, snapshot.getMaxTemp(0));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Checks that the snapshot file reads back like the provider query ForecastFragment runs, and
+    benchmarks the time to the first row of each on a cold start.  The benchmark numbers are
+    only logged, look for the TestForecastSnapshotFile tag in logcat.
+ */
+public class TestForecastSnapshotFile extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastSnapshotFile.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    // The same columns ForecastFragment asks for.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // What ForecastAdapter reads to draw a row.
+    private static final String[] BENCHMARK_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private String mSavedLocation;
+    private Uri mForecastUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        mSavedLocation = TestUtilities.overridePreferredLocation(mContext);
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long today = TestUtilities.bulkInsertDays(mContext, locationRowId, 14);
+
+        mForecastUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, today);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        TestUtilities.restorePreferredLocation(mContext, mSavedLocation);
+        super.tearDown();
+    }
+
+    private Cursor queryForecast() {
+        return mContext.getContentResolver().query(mForecastUri, FORECAST_COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testSnapshotFileMatchesProvider() {
+        assertNull("Error: There should be no snapshot before one is written",
+                ForecastSnapshotFile.query(mContext, TestUtilities.TEST_LOCATION,
+                        FORECAST_COLUMNS));
+        assertTrue(ForecastSnapshotFile.write(mContext, ForecastSnapshot.get(mContext)));
+
+        Cursor expected = queryForecast();
+        Cursor actual = ForecastSnapshotFile.query(mContext, TestUtilities.TEST_LOCATION,
+                FORECAST_COLUMNS);
+        assertNotNull("Error: The snapshot could not be read back", actual);
+
+        assertEquals(14, actual.getCount());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertTrue(Arrays.equals(expected.getColumnNames(), actual.getColumnNames()));
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                String name = expected.getColumnName(column);
+                assertEquals(name, expected.getType(column), actual.getType(column));
+                assertEquals(name, expected.getString(column), actual.getString(column));
+                assertEquals(name, expected.getLong(column), actual.getLong(column));
+                assertEquals(name, expected.getDouble(column), actual.getDouble(column));
+            }
+        }
+        assertFalse(actual.moveToNext());
+        expected.close();
+        actual.close();
+    }
+
+    public void testSnapshotFileIsIgnoredForOtherLocations() {
+        assertTrue(ForecastSnapshotFile.write(mContext, ForecastSnapshot.get(mContext)));
+        assertNull("Error: A snapshot of another location was served",
+                ForecastSnapshotFile.query(mContext, "94043", FORECAST_COLUMNS));
+
+        try {
+            ForecastSnapshotFile.query(mContext, TestUtilities.TEST_LOCATION,
+                    new String[]{WeatherEntry.COLUMN_HUMIDITY});
+            fail("Error: A column the snapshot doesn't hold was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testSnapshotFileStartupBenchmark() {
+        assertTrue(ForecastSnapshotFile.write(mContext, ForecastSnapshot.get(mContext)));
+
+        long fileNanos = 0;
+        long providerNanos = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = ForecastSnapshotFile.query(mContext, TestUtilities.TEST_LOCATION,
+                    BENCHMARK_COLUMNS);
+            readFirstRow(cursor);
+            fileNanos += System.nanoTime() - start;
+
+            // Like a cold start, the loader has to open the database before it can query it.
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            start = System.nanoTime();
+            cursor = helper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                    BENCHMARK_COLUMNS,
+                    WeatherEntry.COLUMN_DATE + " >= ?",
+                    new String[]{Long.toString(WeatherContract.normalizeDate(
+                            System.currentTimeMillis()))},
+                    null,
+                    null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            readFirstRow(cursor);
+            providerNanos += System.nanoTime() - start;
+            helper.close();
+        }
+
+        Log.d(LOG_TAG, "Time to the first forecast row, averaged over " + BENCHMARK_ITERATIONS
+                + " cold starts: snapshot file " + fileNanos / BENCHMARK_ITERATIONS / 1000
+                + "us, database " + providerNanos / BENCHMARK_ITERATIONS / 1000 + "us");
+    }
+
+    private static void readFirstRow(Cursor cursor) {
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        cursor.getLong(0);
+        cursor.getLong(1);
+        cursor.getDouble(2);
+        cursor.getDouble(3);
+        cursor.getInt(4);
+        cursor.close();
+    }
+}
@@ -16,20 +16,27 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -61,6 +68,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                WeatherContract.HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
 
         Cursor cursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -512,4 +524,272 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Upserting the same rows twice must leave the second pass a no-op, and changing a single
+    // day must update that row in place.
+    public void testUpsertWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        Bundle result = upsert(weatherValues);
+        assertEquals("Error: All rows should be inserted by the first upsert",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+        for (int rowChange : result.getIntArray(WeatherContract.EXTRA_ROW_CHANGES)) {
+            assertEquals(WeatherContract.ROW_INSERTED, rowChange);
+        }
+        long firstRowId = queryWeatherRowId(weatherValues[0]);
+
+        // Same data again: nothing should be written.
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        int changedCount = mContext.getContentResolver().bulkInsert(
+                WeatherEntry.buildWeatherUpsertUri(), weatherValues);
+        assertEquals("Error: Identical rows should not be rewritten", 0, changedCount);
+
+        // Change one day.
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        weatherValues[0].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        result = upsert(weatherValues);
+        int[] rowChanges = result.getIntArray(WeatherContract.EXTRA_ROW_CHANGES);
+        assertEquals(1, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+        assertEquals(WeatherContract.ROW_UPDATED, rowChanges[0]);
+        for (int i = 1; i < rowChanges.length; i++) {
+            assertEquals(WeatherContract.ROW_UNCHANGED, rowChanges[i]);
+        }
+        assertEquals("Error: An updated row should keep its _ID",
+                firstRowId, queryWeatherRowId(weatherValues[0]));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testUpsertWeather.  Error validating updated row.",
+                cursor, weatherValues[0]);
+        cursor.close();
+    }
+
+    // A batch touching several weather URIs must reach the forecast list's observers once.
+    public void testApplyBatchNotifiesOnce() throws Exception {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (ContentValues values : weatherValues) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values).build());
+        }
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " = ?",
+                        new String[]{weatherValues[0].getAsString(WeatherEntry.COLUMN_DATE)})
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 99.5)
+                .build());
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " = ?",
+                        new String[]{weatherValues[1].getAsString(WeatherEntry.COLUMN_DATE)})
+                .build());
+
+        // Observe the URI the forecast list's loader uses.
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                true, weatherObserver);
+
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        // Give any extra notification time to arrive before the observer's thread is stopped.
+        SystemClock.sleep(500);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Error: The batch should send a single notification",
+                1, weatherObserver.mChangeCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.close();
+    }
+
+    // The sync adapter's batch: a location upsert that the weather rows refer back to, then a
+    // purge.  A failing operation must roll back everything before it.
+    public void testApplyBatchIsAtomic() throws Exception {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.buildLocationUpsertUri())
+                .withValues(TestUtilities.createNorthPoleLocationValues()).build());
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newUpdate(WeatherEntry.buildWeatherUpsertUri())
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // No row is dated before the epoch, so this deletes nothing and fails the batch.
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?", new String[]{"0"})
+                .withExpectedCount(1)
+                .build());
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.CONTENT_URI, true, weatherObserver);
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: The batch should have failed on its last operation");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+        // Give a wrongly sent notification time to arrive.
+        SystemClock.sleep(500);
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        weatherObserver.mHT.quit();
+        assertEquals("Error: A failed batch should not notify its observers",
+                0, weatherObserver.mChangeCount);
+        assertEquals("Error: A failed batch should leave no weather rows",
+                0, countRows(WeatherEntry.CONTENT_URI));
+        assertEquals("Error: A failed batch should leave no location rows",
+                0, countRows(LocationEntry.CONTENT_URI));
+
+        // Without the failing operation the batch goes through as a whole.
+        operations.remove(operations.size() - 1);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, countRows(WeatherEntry.CONTENT_URI));
+        for (int i = 1; i < results.length; i++) {
+            assertEquals("Error: Every day should be inserted", 1, results[i].count.intValue());
+        }
+
+        // A second run finds the location again and changes nothing.
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals("Error: The location upsert should reuse the existing row",
+                locationRowId, ContentUris.parseId(results[0].uri));
+        assertEquals(1, countRows(LocationEntry.CONTENT_URI));
+        for (int i = 1; i < results.length; i++) {
+            assertEquals("Error: Identical days should not be rewritten",
+                    0, results[i].count.intValue());
+        }
+    }
+
+    // Hourly rows are keyed by location and time: a range query must return only the
+    // location's periods inside the range, in time order, whatever order they were stored in.
+    public void testHourlyRangeQuery() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "hourly_other");
+        long otherLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, otherLocation));
+
+        long firstTime = 1452801600L;
+        long period = 3 * 60 * 60;
+        ContentValues[] values = new ContentValues[16];
+        for (int i = 0; i < values.length; i++) {
+            // Stored newest first, and interleaved with another location's periods.
+            int periodIndex = values.length / 2 - 1 - i / 2;
+            values[i] = createHourlyValues(i % 2 == 0 ? locationRowId : otherLocationRowId,
+                    firstTime + periodIndex * period, 10.5 + periodIndex);
+        }
+        assertEquals(values.length, mContext.getContentResolver().bulkInsert(
+                WeatherContract.HourlyEntry.CONTENT_URI, values));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithRange(
+                        TestUtilities.TEST_LOCATION, firstTime + period, firstTime + 4 * period),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Expected the three periods in the range", 3, cursor.getCount());
+        int timeIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_TIME);
+        int tempIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_TEMP);
+        int locationIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_LOC_KEY);
+        int conditionsIndex = cursor.getColumnIndex(WeatherContract.HourlyEntry.COLUMN_CONDITIONS);
+        for (int i = 1; cursor.moveToNext(); i++) {
+            assertEquals(firstTime + i * period, cursor.getLong(timeIndex));
+            assertEquals(locationRowId, cursor.getLong(locationIndex));
+            assertEquals(10.5 + i,
+                    WeatherContract.HourlyEntry.fromScaled(cursor.getInt(tempIndex)));
+            int conditions = cursor.getInt(conditionsIndex);
+            assertEquals(804, WeatherContract.HourlyEntry.getWeatherId(conditions));
+            assertEquals(87, WeatherContract.HourlyEntry.getHumidity(conditions));
+            assertEquals(225f, WeatherContract.HourlyEntry.getWindDirection(conditions));
+        }
+        cursor.close();
+
+        // Storing a period again replaces it.
+        assertNotNull(mContext.getContentResolver().insert(WeatherContract.HourlyEntry.CONTENT_URI,
+                createHourlyValues(locationRowId, firstTime, -2.5)));
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithRange(
+                        TestUtilities.TEST_LOCATION, firstTime, firstTime + 1),
+                new String[]{WeatherContract.HourlyEntry.COLUMN_TEMP},
+                null,
+                null,
+                null
+        );
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals(-2.5, WeatherContract.HourlyEntry.fromScaled(cursor.getInt(0)));
+        cursor.close();
+    }
+
+    private static ContentValues createHourlyValues(long locationRowId, long time,
+                                                    double temperature) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationRowId);
+        values.put(WeatherContract.HourlyEntry.COLUMN_TIME, time);
+        values.put(WeatherContract.HourlyEntry.COLUMN_TEMP,
+                WeatherContract.HourlyEntry.toScaled(temperature));
+        values.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+                WeatherContract.HourlyEntry.toScaled(4.5));
+        values.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+                WeatherContract.HourlyEntry.toScaled(1013.2));
+        values.put(WeatherContract.HourlyEntry.COLUMN_CONDITIONS,
+                WeatherContract.HourlyEntry.packConditions(804, 87, 221.5));
+        return values;
+    }
+
+    private int countRows(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private Bundle upsert(ContentValues[] values) {
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherContract.EXTRA_VALUES, values);
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_WEATHER, null, extras);
+    }
+
+    private long queryWeatherRowId(ContentValues values) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{values.getAsString(WeatherEntry.COLUMN_DATE)},
+                null
+        );
+        assertTrue("Error: Weather row not found", cursor.moveToFirst());
+        long id = cursor.getLong(0);
+        cursor.close();
+        return id;
+    }
 }
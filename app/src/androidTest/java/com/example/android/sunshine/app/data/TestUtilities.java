@@ -17,14 +17,17 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.preference.PreferenceManager;
 import android.test.AndroidTestCase;
 
+import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.utils.PollingCheck;
 
 import java.util.Map;
@@ -36,9 +39,11 @@ import java.util.Set;
     in our solution to use these as-given.
  */
 public class TestUtilities extends AndroidTestCase {
-    static final String TEST_LOCATION = "99705";
+    public static final String TEST_LOCATION = "99705";
     static final long TEST_DATE = 1419033600L;  // December 20th, 2014
 
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
     static void validateCursor(String error, Cursor valueCursor, ContentValues expectedValues) {
         assertTrue("Empty cursor returned. " + error, valueCursor.moveToFirst());
         validateCurrentRecord(error, valueCursor, expectedValues);
@@ -96,7 +101,7 @@ public class TestUtilities extends AndroidTestCase {
         Students: You can uncomment this function once you have finished creating the
         LocationEntry part of the WeatherContract as well as the WeatherDbHelper.
      */
-    static long insertNorthPoleLocationValues(Context context) {
+    public static long insertNorthPoleLocationValues(Context context) {
         // insert our test records into the database
         WeatherDbHelper dbHelper = new WeatherDbHelper(context);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
@@ -111,6 +116,58 @@ public class TestUtilities extends AndroidTestCase {
         return locationRowId;
     }
 
+    /*
+        Stores a forecast of the given number of days from today onwards for the location, the
+        way a sync would leave it.  The high goes up by a degree a day, and every other day has
+        a description that isn't plain ASCII.  Returns today's normalized date.
+     */
+    public static long bulkInsertDays(Context context, long locationRowId, int count) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = createWeatherValues(locationRowId);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    today + i * MILLISECONDS_IN_A_DAY);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75.5 + i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    i % 2 == 0 ? "Asteroids" : "Nu\u00e9es");
+        }
+        assertEquals(count, context.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, values));
+        return today;
+    }
+
+    /*
+        Empties both tables through the provider, and drops the snapshot file written from them.
+     */
+    public static void deleteAllRecords(Context context) {
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        ForecastSnapshotFile.delete(context);
+    }
+
+    /*
+        Points the preferred location, which the snapshot and MainActivity follow, at
+        TEST_LOCATION.  Returns the setting it replaced, or null, for restorePreferredLocation().
+     */
+    public static String overridePreferredLocation(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String locationKey = context.getString(R.string.pref_location_key);
+        String savedLocation = prefs.getString(locationKey, null);
+        prefs.edit().putString(locationKey, TEST_LOCATION).commit();
+        return savedLocation;
+    }
+
+    public static void restorePreferredLocation(Context context, String savedLocation) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String locationKey = context.getString(R.string.pref_location_key);
+        if (savedLocation == null) {
+            prefs.edit().remove(locationKey).commit();
+        } else {
+            prefs.edit().putString(locationKey, savedLocation).commit();
+        }
+    }
+
     /*
         Students: The functions we provide inside of TestProvider use this utility class to test
         the ContentObserver callbacks using the PollingCheck class that we grabbed from the Android
@@ -122,6 +179,7 @@ public class TestUtilities extends AndroidTestCase {
     static class TestContentObserver extends ContentObserver {
         final HandlerThread mHT;
         boolean mContentChanged;
+        volatile int mChangeCount;
 
         static TestContentObserver getTestContentObserver() {
             HandlerThread ht = new HandlerThread("ContentObserverThread");
@@ -142,6 +200,7 @@ public class TestUtilities extends AndroidTestCase {
 
         @Override
         public void onChange(boolean selfChange, Uri uri) {
+            mChangeCount++;
             mContentChanged = true;
         }
 
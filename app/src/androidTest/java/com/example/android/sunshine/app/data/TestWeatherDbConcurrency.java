@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the database's connection setup, and that provider reads keep going, and only ever
+    see whole batches, while a sync-sized bulk insert is running.  The read latencies are only
+    logged, look for the TestWeatherDbConcurrency tag in logcat.
+ */
+public class TestWeatherDbConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherDbConcurrency.class.getSimpleName();
+
+    private static final int WRITE_ROUNDS = 20;
+    private static final int DAYS_PER_ROUND = 200;
+
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testDefaultTuningIsApplied() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals("Error: The database should use write-ahead logging",
+                "wal", queryPragma(db, "journal_mode").toLowerCase());
+        // NORMAL
+        assertEquals("1", queryPragma(db, "synchronous"));
+        assertEquals(Integer.toString(WeatherDbHelper.DEFAULT_TUNING.walAutoCheckpointPages),
+                queryPragma(db, "wal_autocheckpoint"));
+        assertEquals(Long.toString(WeatherDbHelper.DEFAULT_TUNING.journalSizeLimitBytes),
+                queryPragma(db, "journal_size_limit"));
+        helper.close();
+    }
+
+    private static String queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testReadsDuringBulkInsert() throws Exception {
+        final long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        final Uri forecastUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+
+        ReaderThread reader = new ReaderThread(forecastUri);
+        reader.start();
+        // Let the reader get going before the writes start.
+        SystemClock.sleep(100);
+
+        long writeStart = SystemClock.elapsedRealtime();
+        long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        for (int round = 0; round < WRITE_ROUNDS; round++) {
+            ContentValues[] values = new ContentValues[DAYS_PER_ROUND];
+            for (int i = 0; i < DAYS_PER_ROUND; i++, date += MILLISECONDS_IN_A_DAY) {
+                values[i] = TestUtilities.createWeatherValues(locationRowId);
+                values[i].put(WeatherEntry.COLUMN_DATE, date);
+            }
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        }
+        long writeMillis = SystemClock.elapsedRealtime() - writeStart;
+
+        reader.finish();
+        reader.join();
+
+        Log.d(LOG_TAG, WRITE_ROUNDS + " bulk inserts of " + DAYS_PER_ROUND + " rows took "
+                + writeMillis + "ms, during which " + reader.mReads + " reads took at most "
+                + reader.mMaxReadMillis + "ms");
+        assertNull("Error: A read saw part of a bulk insert", reader.mError);
+        assertTrue("Error: No read completed during the writes", reader.mReads > 0);
+    }
+
+    // Runs the forecast list's query in a loop until told to stop, checking that every read sees
+    // a whole number of bulk inserts.
+    private class ReaderThread extends Thread {
+        private final Uri mUri;
+        private volatile boolean mFinished;
+
+        volatile int mReads;
+        volatile long mMaxReadMillis;
+        volatile String mError;
+
+        ReaderThread(Uri uri) {
+            mUri = uri;
+        }
+
+        void finish() {
+            mFinished = true;
+        }
+
+        @Override
+        public void run() {
+            while (!mFinished && mError == null) {
+                long start = SystemClock.elapsedRealtime();
+                Cursor cursor = mContext.getContentResolver().query(mUri,
+                        new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                        null,
+                        null,
+                        WeatherEntry.COLUMN_DATE + " ASC");
+                int count = cursor.getCount();
+                cursor.close();
+                mMaxReadMillis = Math.max(mMaxReadMillis, SystemClock.elapsedRealtime() - start);
+                mReads++;
+                if (count % DAYS_PER_ROUND != 0) {
+                    mError = "Read " + count + " rows";
+                }
+            }
+        }
+    }
+}
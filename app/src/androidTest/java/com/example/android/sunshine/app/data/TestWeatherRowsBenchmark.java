@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the WeatherRows call()s store the same data as bulkInsert, and benchmarks the two
+    on a multi-location, long-history backfill.  The benchmark numbers are only logged, look for
+    the TestWeatherRowsBenchmark tag in logcat.
+ */
+public class TestWeatherRowsBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherRowsBenchmark.class.getSimpleName();
+
+    private static final int BENCHMARK_LOCATIONS = 10;
+    private static final int BENCHMARK_DAYS = 365;
+
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    // Normalized up front so that the values we compare against match what gets stored.
+    private static final long FIRST_DATE = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        mLocationIds = new long[BENCHMARK_LOCATIONS];
+        for (int i = 0; i < BENCHMARK_LOCATIONS; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "benchmark" + i);
+            mLocationIds[i] = ContentUris.parseId(mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, locationValues));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    public void testInsertWeatherRows() {
+        ContentValues[] values = createContentValues(mLocationIds[0], 20, 0);
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_INSERT_WEATHER_ROWS, null, toRows(values).toBundle());
+        assertEquals(values.length, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(values.length, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < values.length; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testInsertWeatherRows.  Error validating row "
+                    + i + ".", cursor, values[i]);
+        }
+        cursor.close();
+    }
+
+    public void testUpsertWeatherRows() {
+        ContentValues[] values = createContentValues(mLocationIds[0], 20, 0);
+        Bundle result = upsertRows(toRows(values));
+        assertEquals(values.length, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+        for (int rowChange : result.getIntArray(WeatherContract.EXTRA_ROW_CHANGES)) {
+            assertEquals(WeatherContract.ROW_INSERTED, rowChange);
+        }
+
+        // Same rows again: nothing to write.
+        result = upsertRows(toRows(values));
+        assertEquals(0, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+
+        // Change one day, and make sure only that day is updated.
+        values[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        result = upsertRows(toRows(values));
+        assertEquals(1, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+        assertEquals(WeatherContract.ROW_UPDATED,
+                result.getIntArray(WeatherContract.EXTRA_ROW_CHANGES)[3]);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{values[3].getAsString(WeatherEntry.COLUMN_DATE)},
+                null
+        );
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testUpsertWeatherRows.  Error validating updated row.",
+                cursor, values[3]);
+        cursor.close();
+    }
+
+    public void testBulkInsertBenchmark() {
+        ContentValues[] values = new ContentValues[BENCHMARK_LOCATIONS * BENCHMARK_DAYS];
+        for (int i = 0; i < BENCHMARK_LOCATIONS; i++) {
+            System.arraycopy(createContentValues(mLocationIds[i], BENCHMARK_DAYS, 0), 0,
+                    values, i * BENCHMARK_DAYS, BENCHMARK_DAYS);
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        int inserted = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        long contentValuesMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(values.length, inserted);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        // Building the rows is part of what the sync adapter pays for, so it is timed as well.
+        start = SystemClock.elapsedRealtime();
+        WeatherRows rows = new WeatherRows(values.length);
+        for (int i = 0; i < BENCHMARK_LOCATIONS; i++) {
+            addRows(rows, mLocationIds[i], BENCHMARK_DAYS, 0);
+        }
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_INSERT_WEATHER_ROWS, null, rows.toBundle());
+        long rowsMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(values.length, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+
+        // A second, identical backfill through the upsert path only has to compare.
+        start = SystemClock.elapsedRealtime();
+        result = upsertRows(rows);
+        long unchangedUpsertMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(0, result.getInt(WeatherContract.EXTRA_CHANGED_COUNT));
+
+        Log.d(LOG_TAG, values.length + " rows: bulkInsert " + contentValuesMillis + "ms, "
+                + "insert rows " + rowsMillis + "ms, "
+                + "unchanged upsert rows " + unchangedUpsertMillis + "ms");
+    }
+
+    private Bundle upsertRows(WeatherRows rows) {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_WEATHER_ROWS, null, rows.toBundle());
+    }
+
+    private static ContentValues[] createContentValues(long locationId, int days, int firstDay) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            int day = firstDay + i;
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, FIRST_DATE + day * MILLISECONDS_IN_A_DAY);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2 + 0.01 * day);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3 - 0.01 * day);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75.0 + day % 20);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65.0 - day % 20);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * (day % 10));
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    // Same data as createContentValues, without going through ContentValues.
+    private static void addRows(WeatherRows rows, long locationId, int days, int firstDay) {
+        for (int i = 0; i < days; i++) {
+            int day = firstDay + i;
+            rows.add(locationId, FIRST_DATE + day * MILLISECONDS_IN_A_DAY, 321,
+                    "Asteroids", 65.0 - day % 20, 75.0 + day % 20, 1.2 + 0.01 * day,
+                    1.3 - 0.01 * day, 5.5 + 0.2 * (day % 10), 1.1);
+        }
+    }
+
+    private static WeatherRows toRows(ContentValues[] values) {
+        WeatherRows rows = new WeatherRows(values.length);
+        for (ContentValues value : values) {
+            rows.add(value.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                    value.getAsLong(WeatherEntry.COLUMN_DATE),
+                    value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    value.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    value.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    value.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        }
+        return rows;
+    }
+}
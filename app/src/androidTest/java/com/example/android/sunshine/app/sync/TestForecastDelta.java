@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+    Runs pushed forecast deltas, built here the way the server would build them, through the
+    same path MyGcmListenerService hands them to.
+ */
+public class TestForecastDelta extends AndroidTestCase {
+
+    private static final long MILLISECONDS_IN_A_DAY = 1000 * 60 * 60 * 24;
+
+    private long mToday;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestUtilities.deleteAllRecords(mContext);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mLocationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.deleteAllRecords(mContext);
+        super.tearDown();
+    }
+
+    private ContentValues createDay(int dayOffset, double high) {
+        ContentValues day = new ContentValues();
+        day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationRowId);
+        day.put(WeatherEntry.COLUMN_DATE, mToday + dayOffset * MILLISECONDS_IN_A_DAY);
+        day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        day.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        day.put(WeatherEntry.COLUMN_MIN_TEMP, -20.5);
+        day.put(WeatherEntry.COLUMN_HUMIDITY, 80.0);
+        day.put(WeatherEntry.COLUMN_PRESSURE, 1013.2);
+        day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+        day.put(WeatherEntry.COLUMN_DEGREES, 270.0);
+        return day;
+    }
+
+    private void storeForecast(int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            values[i] = createDay(i, -10);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    // Stands in for the server: encodes the given days as a delta message.
+    private static String generateDelta(String locationSetting, ContentValues... days)
+            throws JSONException {
+        JSONArray encodedDays = new JSONArray();
+        for (ContentValues day : days) {
+            encodedDays.put(new JSONArray()
+                    .put(day.getAsLong(WeatherEntry.COLUMN_DATE))
+                    .put(day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID))
+                    .put(day.getAsString(WeatherEntry.COLUMN_SHORT_DESC))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_HUMIDITY))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_PRESSURE))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED))
+                    .put(day.getAsDouble(WeatherEntry.COLUMN_DEGREES)));
+        }
+        return new JSONObject()
+                .put(ForecastDelta.KEY_LOCATION, locationSetting)
+                .put(ForecastDelta.KEY_DAYS, encodedDays)
+                .toString();
+    }
+
+    private double queryHigh(int dayOffset) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        mToday + dayOffset * MILLISECONDS_IN_A_DAY),
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP},
+                null,
+                null,
+                null);
+        assertTrue("Error: Day " + dayOffset + " is missing", cursor.moveToFirst());
+        double high = cursor.getDouble(0);
+        cursor.close();
+        return high;
+    }
+
+    public void testDeltaUpdatesChangedDays() throws JSONException {
+        storeForecast(3);
+
+        // Day 1 warms up, and the delta adds a day we didn't have.
+        String delta = generateDelta(TestUtilities.TEST_LOCATION, createDay(1, 2.5),
+                createDay(3, 4.5));
+        assertTrue(ForecastDelta.parse(delta).apply(mContext));
+
+        assertEquals(-10.0, queryHigh(0));
+        assertEquals(2.5, queryHigh(1));
+        assertEquals(-10.0, queryHigh(2));
+        assertEquals(4.5, queryHigh(3));
+    }
+
+    public void testDeltaSkipsPastDays() throws JSONException {
+        storeForecast(1);
+
+        String delta = generateDelta(TestUtilities.TEST_LOCATION, createDay(-1, 1.5));
+        assertTrue(ForecastDelta.parse(delta).apply(mContext));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: A day that is over was stored", 1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testIncompleteDeltaIsRefused() throws JSONException {
+        // Nothing stored yet, so the changed days alone would leave gaps.
+        String delta = generateDelta(TestUtilities.TEST_LOCATION, createDay(1, 2.5));
+        assertFalse(ForecastDelta.parse(delta).apply(mContext));
+
+        storeForecast(3);
+        assertFalse("Error: A delta for an unknown location was applied",
+                ForecastDelta.parse(generateDelta("94043", createDay(1, 2.5)))
+                        .apply(mContext));
+
+        String missingField = "{\"location\":\"" + TestUtilities.TEST_LOCATION + "\",\"days\":[["
+                + (mToday + MILLISECONDS_IN_A_DAY) + ",800,\"Clear\",2.5,-20.5,80,1013.2,3.5]]}";
+        try {
+            ForecastDelta.parse(missingField);
+            fail("Error: A day without its wind direction was accepted");
+        } catch (JSONException e) {
+            // expected
+        }
+        assertEquals(-10.0, queryHigh(1));
+    }
+
+    public void testOtherMessagesAreLeftAlone() {
+        Bundle alert = new Bundle();
+        alert.putString("data", "{\"weather\":\"Hurricane\",\"location\":\"Mountain View\"}");
+        assertFalse(ForecastDelta.onMessageReceived(mContext, alert));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that the streaming forecast parser agrees with the org.json one, and benchmarks the
+    two against a recorded 14 day response.  The benchmark numbers are only logged, look for
+    the TestForecastJsonParser tag in logcat.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    // A 14 day forecast for 94043, as recorded from api.openweathermap.org
+    static final String RECORDED_14_DAY_FORECAST =
+            "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\",\"population\":0},\"cod\":\"200\",\"message\":0.0132,\"cnt\":14,\"list\":[" +
+            "{\"dt\":1452801600,\"temp\":{\"day\":14.88,\"min\":11.69,\"max\":18.06,\"night\":12.69,\"eve\":16.06,\"morn\":11.69},\"pressure\":1005.97,\"humidity\":92,\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\",\"icon\":\"10d\"}],\"speed\":4.52,\"deg\":187,\"clouds\":74,\"rain\":0.54}," +
+            "{\"dt\":1452888000,\"temp\":{\"day\":9.55,\"min\":7.29,\"max\":11.81,\"night\":8.29,\"eve\":9.81,\"morn\":7.29},\"pressure\":1013.36,\"humidity\":55,\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}],\"speed\":1.18,\"deg\":217,\"clouds\":7,\"rain\":5.0}," +
+            "{\"dt\":1452974400,\"temp\":{\"day\":15.57,\"min\":11.68,\"max\":19.46,\"night\":12.68,\"eve\":17.46,\"morn\":11.68},\"pressure\":1016.66,\"humidity\":43,\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],\"speed\":4.83,\"deg\":203,\"clouds\":6}," +
+            "{\"dt\":1453060800,\"temp\":{\"day\":10.86,\"min\":6.28,\"max\":15.43,\"night\":7.28,\"eve\":13.43,\"morn\":6.28},\"pressure\":1010.79,\"humidity\":49,\"weather\":[{\"id\":801,\"main\":\"Clouds\",\"description\":\"few clouds\",\"icon\":\"02d\"}],\"speed\":4.56,\"deg\":292,\"clouds\":39}," +
+            "{\"dt\":1453147200,\"temp\":{\"day\":13.44,\"min\":10.9,\"max\":15.98,\"night\":11.9,\"eve\":13.98,\"morn\":10.9},\"pressure\":1016.63,\"humidity\":80,\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}],\"speed\":1.91,\"deg\":49,\"clouds\":70,\"rain\":4.33}," +
+            "{\"dt\":1453233600,\"temp\":{\"day\":8.98,\"min\":6.36,\"max\":11.6,\"night\":7.36,\"eve\":9.6,\"morn\":6.36},\"pressure\":1018.61,\"humidity\":67,\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10d\"}],\"speed\":6.33,\"deg\":238,\"clouds\":74,\"rain\":5.56}," +
+            "{\"dt\":1453320000,\"temp\":{\"day\":12.19,\"min\":7.8,\"max\":16.57,\"night\":8.8,\"eve\":14.57,\"morn\":7.8},\"pressure\":1018.98,\"humidity\":55,\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\",\"icon\":\"10d\"}],\"speed\":1.11,\"deg\":153,\"clouds\":67,\"rain\":3.07}," +
+            "{\"dt\":1453406400,\"temp\":{\"day\":13.25,\"min\":10.38,\"max\":16.11,\"night\":11.38,\"eve\":14.11,\"morn\":10.38},\"pressure\":1024.6,\"humidity\":47,\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\",\"icon\":\"10d\"}],\"speed\":4.34,\"deg\":84,\"clouds\":96,\"rain\":2.18}," +
+            "{\"dt\":1453492800,\"temp\":{\"day\":13.41,\"min\":8.53,\"max\":18.3,\"night\":9.53,\"eve\":16.3,\"morn\":8.53},\"pressure\":1006.55,\"humidity\":75,\"weather\":[{\"id\":803,\"main\":\"Clouds\",\"description\":\"broken clouds\",\"icon\":\"04d\"}],\"speed\":4.8,\"deg\":160,\"clouds\":43}," +
+            "{\"dt\":1453579200,\"temp\":{\"day\":13.31,\"min\":9.57,\"max\":17.05,\"night\":10.57,\"eve\":15.05,\"morn\":9.57},\"pressure\":1014.12,\"humidity\":93,\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\",\"icon\":\"10d\"}],\"speed\":1.2,\"deg\":138,\"clouds\":60,\"rain\":4.24}," +
+            "{\"dt\":1453665600,\"temp\":{\"day\":10.46,\"min\":6.36,\"max\":14.57,\"night\":7.36,\"eve\":12.57,\"morn\":6.36},\"pressure\":1017.94,\"humidity\":83,\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],\"speed\":6.66,\"deg\":145,\"clouds\":91}," +
+            "{\"dt\":1453752000,\"temp\":{\"day\":14.36,\"min\":11.32,\"max\":17.4,\"night\":12.32,\"eve\":15.4,\"morn\":11.32},\"pressure\":1023.81,\"humidity\":62,\"weather\":[{\"id\":803,\"main\":\"Clouds\",\"description\":\"broken clouds\",\"icon\":\"04d\"}],\"speed\":1.76,\"deg\":59,\"clouds\":63}," +
+            "{\"dt\":1453838400,\"temp\":{\"day\":10.17,\"min\":7.31,\"max\":13.03,\"night\":8.31,\"eve\":11.03,\"morn\":7.31},\"pressure\":1019.77,\"humidity\":65,\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],\"speed\":3.43,\"deg\":254,\"clouds\":10}," +
+            "{\"dt\":1453924800,\"temp\":{\"day\":12.35,\"min\":8.7,\"max\":16.0,\"night\":9.7,\"eve\":14.0,\"morn\":8.7},\"pressure\":1022.67,\"humidity\":92,\"weather\":[{\"id\":801,\"main\":\"Clouds\",\"description\":\"few clouds\",\"icon\":\"02d\"}],\"speed\":3.73,\"deg\":281,\"clouds\":35}" +
+            "]}";
+
+    static final String RECORDED_NOT_FOUND =
+            "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    static InputStream asStream(String json) throws UnsupportedEncodingException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    public void testStreamingParserMatchesDomParser() throws Exception {
+        ForecastJsonParser.Forecast streamed =
+                ForecastJsonParser.parse(asStream(RECORDED_14_DAY_FORECAST));
+        ForecastJsonParser.Forecast dom = ForecastJsonParser.parse(RECORDED_14_DAY_FORECAST);
+
+        assertTrue("Error: Streaming parser did not report success", streamed.isOk());
+        assertEquals("Mountain View", streamed.cityName);
+        assertEquals(dom.cityName, streamed.cityName);
+        assertEquals(dom.cityLatitude, streamed.cityLatitude);
+        assertEquals(dom.cityLongitude, streamed.cityLongitude);
+        assertEquals("Error: Expected 14 forecast days", 14, streamed.days.size());
+        assertEquals(dom.days.size(), streamed.days.size());
+
+        for (int i = 0; i < dom.days.size(); i++) {
+            ForecastJsonParser.Day expected = dom.days.get(i);
+            ForecastJsonParser.Day actual = streamed.days.get(i);
+            String error = "Error: Day " + i + " differs between parsers";
+            assertEquals(error, expected.pressure, actual.pressure);
+            assertEquals(error, expected.humidity, actual.humidity);
+            assertEquals(error, expected.windSpeed, actual.windSpeed);
+            assertEquals(error, expected.windDirection, actual.windDirection);
+            assertEquals(error, expected.high, actual.high);
+            assertEquals(error, expected.low, actual.low);
+            assertEquals(error, expected.description, actual.description);
+            assertEquals(error, expected.weatherId, actual.weatherId);
+        }
+    }
+
+    public void testStreamingParserReportsServerError() throws Exception {
+        ForecastJsonParser.Forecast forecast =
+                ForecastJsonParser.parse(asStream(RECORDED_NOT_FOUND));
+        assertFalse(forecast.isOk());
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+        assertEquals(0, forecast.days.size());
+    }
+
+    public void testStreamingParserRejectsTruncatedPayload() throws Exception {
+        String truncated = RECORDED_14_DAY_FORECAST.substring(0,
+                RECORDED_14_DAY_FORECAST.length() / 2);
+        try {
+            ForecastJsonParser.parse(asStream(truncated));
+            fail("Error: A truncated payload should not parse");
+        } catch (JSONException e) {
+            // expected, a cut off response is an invalid payload
+        } catch (EOFException e) {
+            // also acceptable, the stream ran out before the document ended
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testParserBenchmark() throws Exception {
+        byte[] payload = RECORDED_14_DAY_FORECAST.getBytes("UTF-8");
+
+        // Warm both code paths up so that we don't measure class loading or the JIT.
+        for (int i = 0; i < 20; i++) {
+            ForecastJsonParser.parse(new ByteArrayInputStream(payload));
+            ForecastJsonParser.parse(new String(payload, "UTF-8"));
+        }
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                ForecastJsonParser.parse(new ByteArrayInputStream(payload));
+            }
+            long streamingNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int streamingAllocCount = Debug.getThreadAllocCount();
+            int streamingAllocSize = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                // The DOM path also pays for turning the bytes into a String, as it did when it
+                // buffered the response line by line.
+                ForecastJsonParser.parse(new String(payload, "UTF-8"));
+            }
+            long domNanos = SystemClock.elapsedRealtimeNanos() - start;
+            int domAllocCount = Debug.getThreadAllocCount();
+            int domAllocSize = Debug.getThreadAllocSize();
+
+            Log.i(LOG_TAG, String.format("streaming: %d us/parse, %d objects/parse, %d bytes/parse",
+                    streamingNanos / 1000 / BENCHMARK_ITERATIONS,
+                    streamingAllocCount / BENCHMARK_ITERATIONS,
+                    streamingAllocSize / BENCHMARK_ITERATIONS));
+            Log.i(LOG_TAG, String.format("org.json:  %d us/parse, %d objects/parse, %d bytes/parse",
+                    domNanos / 1000 / BENCHMARK_ITERATIONS,
+                    domAllocCount / BENCHMARK_ITERATIONS,
+                    domAllocSize / BENCHMARK_ITERATIONS));
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONException;
+
+import java.net.HttpURLConnection;
+
+public class TestHourlyForecastJsonParser extends AndroidTestCase {
+
+    // The first periods of a 3-hourly forecast for 94043, as recorded from
+    // api.openweathermap.org
+    static final String RECORDED_HOURLY_FORECAST =
+            "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\",\"population\":0},\"cod\":\"200\",\"message\":0.0087,\"cnt\":3,\"list\":[" +
+            "{\"dt\":1452805200,\"main\":{\"temp\":14.21,\"temp_min\":13.4,\"temp_max\":14.21,\"pressure\":1005.1,\"sea_level\":1018.2,\"grnd_level\":1005.1,\"humidity\":93,\"temp_kf\":0.81},\"weather\":[{\"id\":500,\"main\":\"Rain\",\"description\":\"light rain\",\"icon\":\"10d\"}],\"clouds\":{\"all\":92},\"wind\":{\"speed\":4.61,\"deg\":183.5},\"rain\":{\"3h\":0.52},\"sys\":{\"pod\":\"d\"},\"dt_txt\":\"2016-01-14 21:00:00\"}," +
+            "{\"dt\":1452816000,\"main\":{\"temp\":12.86,\"temp_min\":12.25,\"temp_max\":12.86,\"pressure\":1006.45,\"sea_level\":1019.6,\"grnd_level\":1006.45,\"humidity\":95,\"temp_kf\":0.61},\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\",\"icon\":\"10n\"}],\"clouds\":{\"all\":88},\"wind\":{\"speed\":3.26,\"deg\":201.001},\"rain\":{\"3h\":3.1},\"sys\":{\"pod\":\"n\"},\"dt_txt\":\"2016-01-15 00:00:00\"}," +
+            "{\"dt\":1452826800,\"main\":{\"temp\":11.69,\"temp_min\":11.28,\"temp_max\":11.69,\"pressure\":1008.02,\"sea_level\":1021.3,\"grnd_level\":1008.02,\"humidity\":97,\"temp_kf\":0.41},\"weather\":[{\"id\":803,\"main\":\"Clouds\",\"description\":\"broken clouds\",\"icon\":\"04n\"}],\"clouds\":{\"all\":76},\"wind\":{\"speed\":1.72,\"deg\":267},\"sys\":{\"pod\":\"n\"},\"dt_txt\":\"2016-01-15 03:00:00\"}" +
+            "]}";
+
+    public void testParseHourlyForecast() throws Exception {
+        HourlyForecastJsonParser.HourlyForecast forecast = HourlyForecastJsonParser.parse(
+                TestForecastJsonParser.asStream(RECORDED_HOURLY_FORECAST));
+
+        assertTrue(forecast.isOk());
+        assertEquals("Mountain View", forecast.cityName);
+        assertEquals(37.386051, forecast.cityLatitude);
+        assertEquals(-122.083847, forecast.cityLongitude);
+        assertEquals(3, forecast.size());
+
+        assertEquals(1452805200L, forecast.getTime(0));
+        assertEquals(14.21, forecast.getTemperature(0));
+        assertEquals(1005.1, forecast.getPressure(0));
+        assertEquals(93, forecast.getHumidity(0));
+        assertEquals(4.61, forecast.getWindSpeed(0));
+        assertEquals(183.5, forecast.getWindDirection(0));
+        assertEquals(500, forecast.getWeatherId(0));
+
+        assertEquals(1452826800L, forecast.getTime(2));
+        assertEquals(803, forecast.getWeatherId(2));
+    }
+
+    public void testParseGrowsPastInitialCapacity() throws Exception {
+        StringBuilder json = new StringBuilder("{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\","
+                + "\"coord\":{\"lon\":-122.08,\"lat\":37.38}},\"list\":[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(1452805200L + i * 10800L)
+                    .append(",\"main\":{\"temp\":").append(i).append("}}");
+        }
+        json.append("]}");
+
+        HourlyForecastJsonParser.HourlyForecast forecast = HourlyForecastJsonParser.parse(
+                TestForecastJsonParser.asStream(json.toString()));
+        assertEquals(100, forecast.size());
+        assertEquals(99.0, forecast.getTemperature(99));
+        assertEquals(1452805200L + 99 * 10800L, forecast.getTime(99));
+    }
+
+    public void testParseErrors() throws Exception {
+        HourlyForecastJsonParser.HourlyForecast notFound = HourlyForecastJsonParser.parse(
+                TestForecastJsonParser.asStream(TestForecastJsonParser.RECORDED_NOT_FOUND));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, notFound.messageCode);
+        assertFalse(notFound.isOk());
+
+        try {
+            HourlyForecastJsonParser.parse(TestForecastJsonParser.asStream(
+                    "{\"cod\":\"200\",\"city\":{\"name\":\"x\",\"coord\":{}},\"list\":[{\"dt\":1}]}"));
+            fail("Error: A period without a temperature should be rejected");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Runs the fetcher and its retry policy against a local stand-in for the weather server, which
+    answers each request with the next response it was scripted with.
+ */
+public class TestRetryPolicy extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestRetryPolicy.class.getSimpleName();
+
+    // Short enough to keep the tests quick, long enough to still be a real wait.
+    private static final long TEST_BASE_DELAY_MILLIS = 10;
+
+    private static final String GARBLED_FORECAST = "{\"city\":{\"id\":5375480,\"name\":";
+
+    private StandInServer mServer;
+    private ForecastFetcher mFetcher;
+    private RetryPolicy mRetryPolicy;
+
+    /**
+     * A minimal HTTP server on a loopback port.  It reads a request's headers, answers with the
+     * next scripted status and body, and closes the connection.
+     */
+    private static class StandInServer implements Runnable {
+        private final ServerSocket mServerSocket;
+        private final LinkedBlockingQueue<Object[]> mResponses =
+                new LinkedBlockingQueue<Object[]>();
+        final AtomicInteger requestCount = new AtomicInteger();
+
+        StandInServer() throws IOException {
+            mServerSocket = new ServerSocket(0);
+            new Thread(this, "StandInServer").start();
+        }
+
+        String getBaseUrl(String path) {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path + "?";
+        }
+
+        void enqueue(int code, String body) {
+            mResponses.add(new Object[]{code, body});
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    try {
+                        serve(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    if (!mServerSocket.isClosed()) {
+                        Log.e(LOG_TAG, "Stand-in server failed", e);
+                    }
+                }
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                // Skip the request line and headers.
+            }
+            requestCount.incrementAndGet();
+
+            Object[] response = mResponses.poll();
+            int code = response == null ? HttpURLConnection.HTTP_INTERNAL_ERROR
+                    : (Integer) response[0];
+            byte[] body = (response == null ? "" : (String) response[1]).getBytes("UTF-8");
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 " + code + " Scripted\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+        }
+
+        void shutdown() throws IOException {
+            mServerSocket.close();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPolicy();
+        mServer = new StandInServer();
+        mFetcher = new ForecastFetcher(new ForecastHttpCache(mContext),
+                mServer.getBaseUrl("/daily"), mServer.getBaseUrl("/hourly"));
+        mRetryPolicy = new RetryPolicy(mContext, TEST_BASE_DELAY_MILLIS, new Random(42));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        clearPolicy();
+        super.tearDown();
+    }
+
+    private void clearPolicy() {
+        mContext.getSharedPreferences(RetryPolicy.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    private ForecastFetcher.Result fetch() {
+        return mRetryPolicy.fetch(mFetcher, new ForecastFetcher.Request("94043"));
+    }
+
+    private static ForecastFetcher.Result createResult(int status, int responseCode) {
+        ForecastFetcher.Result result = new ForecastFetcher.Result(
+                new ForecastFetcher.Request("94043"), null);
+        result.status = status;
+        result.responseCode = responseCode;
+        return result;
+    }
+
+    public void testServerErrorsAreRetried() {
+        mServer.enqueue(HttpURLConnection.HTTP_UNAVAILABLE, "");
+        mServer.enqueue(HttpURLConnection.HTTP_INTERNAL_ERROR, "");
+        mServer.enqueue(HttpURLConnection.HTTP_OK, TestForecastJsonParser.RECORDED_14_DAY_FORECAST);
+
+        ForecastFetcher.Result result = fetch();
+        assertEquals(ForecastFetcher.Result.STATUS_FETCHED, result.status);
+        assertEquals(3, result.attempts);
+        assertEquals(3, mServer.requestCount.get());
+        assertEquals(14, result.forecast.days.size());
+    }
+
+    public void testGarbledForecastIsRetried() {
+        mServer.enqueue(HttpURLConnection.HTTP_OK, GARBLED_FORECAST);
+        mServer.enqueue(HttpURLConnection.HTTP_OK, TestForecastJsonParser.RECORDED_14_DAY_FORECAST);
+
+        ForecastFetcher.Result result = fetch();
+        assertEquals(ForecastFetcher.Result.STATUS_FETCHED, result.status);
+        assertEquals(2, result.attempts);
+    }
+
+    public void testUnchangedHourlyForecastIsNotStoredAgain() {
+        mServer.enqueue(HttpURLConnection.HTTP_UNAVAILABLE, "");
+        mServer.enqueue(HttpURLConnection.HTTP_OK,
+                TestHourlyForecastJsonParser.RECORDED_HOURLY_FORECAST);
+        mServer.enqueue(HttpURLConnection.HTTP_OK,
+                TestHourlyForecastJsonParser.RECORDED_HOURLY_FORECAST);
+
+        ForecastFetcher.Request request = new ForecastFetcher.Request("94043");
+        ForecastFetcher.Result first = mRetryPolicy.fetchHourly(mFetcher, request);
+        assertEquals(ForecastFetcher.Result.STATUS_FETCHED, first.status);
+        assertEquals(2, first.attempts);
+        assertTrue(first.hourly.isOk());
+        new ForecastHttpCache(mContext).store(first.cacheKey, first.eTag, first.lastModified,
+                first.payloadHash);
+
+        request.conditional = true;
+        ForecastFetcher.Result second = mRetryPolicy.fetchHourly(mFetcher, request);
+        assertEquals("Error: The same 3-hourly forecast would be stored again",
+                ForecastFetcher.Result.STATUS_UNCHANGED, second.status);
+        assertEquals(3, mServer.requestCount.get());
+    }
+
+    public void testRetriesStopAtMaxAttempts() {
+        for (int i = 0; i < RetryPolicy.MAX_ATTEMPTS + 1; i++) {
+            mServer.enqueue(HttpURLConnection.HTTP_BAD_GATEWAY, "");
+        }
+
+        ForecastFetcher.Result result = fetch();
+        assertEquals(ForecastFetcher.Result.STATUS_IO_ERROR, result.status);
+        assertEquals(HttpURLConnection.HTTP_BAD_GATEWAY, result.responseCode);
+        assertEquals(RetryPolicy.MAX_ATTEMPTS, result.attempts);
+        assertEquals(RetryPolicy.MAX_ATTEMPTS, mServer.requestCount.get());
+    }
+
+    public void testClientErrorsAreNotRetried() {
+        mServer.enqueue(HttpURLConnection.HTTP_NOT_FOUND, "");
+
+        ForecastFetcher.Result result = fetch();
+        assertEquals(ForecastFetcher.Result.STATUS_IO_ERROR, result.status);
+        assertEquals("Error: A request that can only fail again was retried",
+                1, mServer.requestCount.get());
+    }
+
+    public void testBackoffIsCappedAndJittered() {
+        RetryPolicy policy = new RetryPolicy(mContext);
+        boolean varied = false;
+        for (int retry = 1; retry <= 10; retry++) {
+            long cap = Math.min(RetryPolicy.MAX_DELAY_MILLIS,
+                    RetryPolicy.BASE_DELAY_MILLIS << (retry - 1));
+            long first = policy.getRetryDelayMillis(retry);
+            long second = policy.getRetryDelayMillis(retry);
+            assertTrue("Error: Retry " + retry + " waits " + first + "ms",
+                    first >= cap / 2 && first <= cap);
+            varied |= first != second;
+        }
+        assertTrue("Error: The delays are not jittered", varied);
+    }
+
+    public void testCircuitOpensAfterRepeatedServerErrors() {
+        long now = System.currentTimeMillis();
+        ForecastFetcher.Result serverError =
+                createResult(ForecastFetcher.Result.STATUS_IO_ERROR, 503);
+        ForecastFetcher.Result offline = createResult(ForecastFetcher.Result.STATUS_IO_ERROR, 0);
+
+        for (int i = 1; i < RetryPolicy.FAILURE_THRESHOLD; i++) {
+            assertFalse(mRetryPolicy.recordSyncOutcome(
+                    Collections.singletonList(serverError), now));
+            // Losing the network in between says nothing about the server.
+            assertFalse(mRetryPolicy.recordSyncOutcome(Collections.singletonList(offline), now));
+        }
+        assertFalse(mRetryPolicy.isCircuitOpen(now));
+
+        assertTrue(mRetryPolicy.recordSyncOutcome(Collections.singletonList(serverError), now));
+        assertTrue(mRetryPolicy.isCircuitOpen(now));
+        long firstCooldown = mRetryPolicy.getSecondsUntilClosed(now);
+        assertTrue(firstCooldown >= RetryPolicy.BASE_COOLDOWN_MILLIS / 2000
+                && firstCooldown <= RetryPolicy.BASE_COOLDOWN_MILLIS / 1000);
+
+        // The trial sync after the cooldown fails too, so the circuit reopens for longer.
+        long later = now + RetryPolicy.BASE_COOLDOWN_MILLIS;
+        assertFalse(mRetryPolicy.isCircuitOpen(later));
+        assertTrue(mRetryPolicy.recordSyncOutcome(Collections.singletonList(serverError), later));
+        assertTrue(mRetryPolicy.getSecondsUntilClosed(later)
+                >= RetryPolicy.BASE_COOLDOWN_MILLIS / 1000);
+
+        // One location getting through is enough to close it.
+        long muchLater = later + RetryPolicy.MAX_COOLDOWN_MILLIS;
+        assertFalse(mRetryPolicy.recordSyncOutcome(Arrays.asList(serverError,
+                createResult(ForecastFetcher.Result.STATUS_NOT_MODIFIED, 304)), muchLater));
+        assertFalse(mRetryPolicy.recordSyncOutcome(Collections.singletonList(serverError),
+                muchLater));
+        assertFalse(mRetryPolicy.isCircuitOpen(muchLater));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+public class TestSyncMetrics extends AndroidTestCase {
+
+    private SyncMetrics mSyncMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSyncMetrics = new SyncMetrics(mContext);
+        mSyncMetrics.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSyncMetrics.clear();
+        super.tearDown();
+    }
+
+    private SyncMetrics.Recorder recordSync(int rowsWritten) {
+        SyncMetrics.Recorder recorder = new SyncMetrics.Recorder();
+        recorder.beginStage(SyncMetrics.STAGE_STORE);
+        recorder.endStage(SyncMetrics.STAGE_STORE);
+        recorder.count(SyncMetrics.COUNTER_ROWS_WRITTEN, rowsWritten);
+        return recorder;
+    }
+
+    private static long getCounter(JSONObject record, String counter) {
+        return record.optJSONObject(SyncMetrics.FIELD_COUNTERS).optLong(counter, -1);
+    }
+
+    public void testRecordHoldsStagesAndFetches() {
+        SyncMetrics.Recorder recorder = recordSync(14);
+
+        ForecastFetcher.Result fetched = new ForecastFetcher.Result(
+                new ForecastFetcher.Request("94043"), null);
+        fetched.status = ForecastFetcher.Result.STATUS_FETCHED;
+        fetched.bytes = 4000;
+        ForecastFetcher.Result failed = new ForecastFetcher.Result(
+                new ForecastFetcher.Request("99705"), null);
+        failed.status = ForecastFetcher.Result.STATUS_IO_ERROR;
+        recorder.recordFetch(fetched);
+        recorder.recordFetch(failed);
+        mSyncMetrics.save(recorder);
+
+        JSONObject record = mSyncMetrics.getLatestRecord();
+        assertNotNull(record);
+        assertTrue("Error: The store stage is missing",
+                record.optJSONObject(SyncMetrics.FIELD_STAGES).has(SyncMetrics.STAGE_STORE));
+        assertEquals(14, getCounter(record, SyncMetrics.COUNTER_ROWS_WRITTEN));
+        assertEquals(4000, getCounter(record, SyncMetrics.COUNTER_BYTES));
+        assertEquals("Error: Counters nothing touched should still be there",
+                0, getCounter(record, SyncMetrics.COUNTER_RETRIES));
+        assertEquals(2, record.optJSONArray(SyncMetrics.FIELD_FETCHES).length());
+        assertEquals("Error: The failed fetch was not recorded as a failure",
+                1, record.optJSONArray(SyncMetrics.FIELD_FAILURES).length());
+        assertTrue(SyncMetrics.describe(mContext, record).contains("99705 io_error"));
+    }
+
+    public void testRingBufferKeepsNewest() {
+        assertNull(mSyncMetrics.getLatestRecord());
+
+        int syncs = SyncMetrics.CAPACITY + 5;
+        for (int i = 0; i < syncs; i++) {
+            mSyncMetrics.save(recordSync(i));
+        }
+
+        List<JSONObject> records = mSyncMetrics.getRecords();
+        assertEquals(SyncMetrics.CAPACITY, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("Error: Records are not newest first",
+                    syncs - 1 - i, getCounter(records.get(i), SyncMetrics.COUNTER_ROWS_WRITTEN));
+        }
+    }
+
+    public void testExport() throws IOException, JSONException {
+        mSyncMetrics.save(recordSync(1));
+        mSyncMetrics.save(recordSync(2));
+
+        File file = mSyncMetrics.export();
+        assertNotNull("Error: The metrics could not be exported", file);
+
+        StringBuilder json = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                json.append(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        file.delete();
+
+        JSONArray exported = new JSONArray(json.toString());
+        assertEquals(2, exported.length());
+        assertEquals(2, getCounter(exported.getJSONObject(0), SyncMetrics.COUNTER_ROWS_WRITTEN));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+public class TestSyncScheduler extends AndroidTestCase {
+
+    private static final List<String> LOCATIONS = Arrays.asList("94043", "99705");
+
+    private SyncScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearStatistics();
+        mScheduler = new SyncScheduler(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearStatistics();
+        super.tearDown();
+    }
+
+    private void clearStatistics() {
+        mContext.getSharedPreferences(SyncScheduler.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    public void testIntervalStaysInBounds() {
+        assertEquals(SyncScheduler.MIN_INTERVAL,
+                SyncScheduler.computeInterval(1, 100, true, true, true, false));
+        assertEquals(SyncScheduler.MAX_INTERVAL,
+                SyncScheduler.computeInterval(0, 0, false, false, false, false));
+
+        int steady = SyncScheduler.computeInterval(0, 1, false, false, false, false);
+        int changing = SyncScheduler.computeInterval(1, 1, false, false, false, false);
+        assertTrue("Error: Changing forecasts should sync more often", changing < steady);
+        assertTrue("Error: Charging on an unmetered network should sync more often",
+                SyncScheduler.computeInterval(0.5f, 1, true, true, false, false)
+                        < SyncScheduler.computeInterval(0.5f, 1, true, false, false, false));
+        assertTrue("Error: Pushed deltas should sync less often",
+                SyncScheduler.computeInterval(0.5f, 1, false, false, false, true)
+                        > SyncScheduler.computeInterval(0.5f, 1, false, false, false, false));
+        assertTrue("Error: A recent push should sync more often",
+                SyncScheduler.computeInterval(0.5f, 1, false, false, true, false)
+                        < SyncScheduler.computeInterval(0.5f, 1, false, false, false, false));
+        assertEquals("Error: Average conditions should keep the default interval",
+                SunshineSyncAdapter.SYNC_INTERVAL,
+                SyncScheduler.computeInterval(SyncScheduler.DEFAULT_VOLATILITY, 1, false, false,
+                        false, false));
+    }
+
+    public void testVolatilityFollowsChanges() {
+        assertEquals(SyncScheduler.DEFAULT_VOLATILITY, mScheduler.getVolatility("94043"));
+
+        for (int i = 0; i < 20; i++) {
+            mScheduler.recordForecastChange("94043", 0, 14);
+            mScheduler.recordForecastChange("99705", 14, 14);
+        }
+        assertTrue(mScheduler.getVolatility("94043") < 0.01f);
+        assertTrue(mScheduler.getVolatility("99705") > 0.99f);
+
+        // The most changeable location sets the pace for all of them.
+        long now = System.currentTimeMillis();
+        assertEquals(SyncScheduler.computeInterval(mScheduler.getVolatility("99705"), 1, false,
+                        false, false, false),
+                mScheduler.computeInterval(LOCATIONS, now, false, false));
+    }
+
+    public void testUsageStretchesQuietHours() {
+        Calendar morning = Calendar.getInstance();
+        morning.set(Calendar.HOUR_OF_DAY, 8);
+        Calendar night = Calendar.getInstance();
+        night.set(Calendar.HOUR_OF_DAY, 2);
+
+        assertEquals("Error: Usage should be neutral without history",
+                1f, mScheduler.getUsageRatio(night.getTimeInMillis()));
+
+        for (int i = 0; i < 30; i++) {
+            mScheduler.recordAppOpen(morning.getTimeInMillis());
+        }
+        assertTrue(mScheduler.getUsageRatio(morning.getTimeInMillis()) > 1);
+        assertEquals(0f, mScheduler.getUsageRatio(night.getTimeInMillis()));
+
+        for (String location : LOCATIONS) {
+            mScheduler.recordForecastChange(location, 7, 14);
+        }
+        assertTrue("Error: The night should sync less often than the morning",
+                mScheduler.computeInterval(LOCATIONS, night.getTimeInMillis(), false, false)
+                        > mScheduler.computeInterval(LOCATIONS, morning.getTimeInMillis(),
+                        false, false));
+    }
+}
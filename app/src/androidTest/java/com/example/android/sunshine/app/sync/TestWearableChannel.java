@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+public class TestWearableChannel extends AndroidTestCase {
+
+    private WearableChannel mChannel;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearChannel();
+        // Never connected, only what was pushed is looked at.
+        mChannel = new WearableChannel(mContext, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearChannel();
+        super.tearDown();
+    }
+
+    private void clearChannel() {
+        mContext.getSharedPreferences(WearableChannel.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    private static byte[] encode(double high) {
+        WearableForecastEncoder encoder = new WearableForecastEncoder();
+        encoder.addDay(16800, 800, high, 12.9);
+        return encoder.toByteArray();
+    }
+
+    public void testFailedPushIsRetriedOnTheNextSync() {
+        final boolean[] accepts = {false};
+        final int[] puts = {0};
+        WearableChannel channel = new WearableChannel(mContext, null) {
+            @Override
+            boolean put(byte[] forecast) {
+                puts[0]++;
+                return accepts[0];
+            }
+        };
+
+        assertFalse(channel.push(encode(21.4)));
+        assertFalse("Error: A forecast the Data Layer refused counts as pushed",
+                channel.wasPushed(encode(21.4)));
+
+        // The next sync finds the forecast unchanged and offers the same payload again.
+        accepts[0] = true;
+        assertTrue("Error: The failed push was not retried", channel.push(encode(21.4)));
+        assertEquals(2, puts[0]);
+
+        assertFalse(channel.push(encode(21.4)));
+        assertEquals("Error: A forecast the wearable has was pushed again", 2, puts[0]);
+    }
+
+    public void testOnlyChangedForecastsArePushed() {
+        byte[] forecast = encode(21.4);
+        assertFalse(mChannel.wasPushed(forecast));
+
+        mChannel.recordPushed(forecast);
+        assertTrue(mChannel.wasPushed(encode(21.4)));
+        assertFalse("Error: The push was skipped, so nothing was connected to",
+                mChannel.push(encode(21.4)));
+
+        assertFalse("Error: A changed forecast would not be pushed",
+                mChannel.wasPushed(encode(21.5)));
+        assertTrue("Error: What was pushed is not kept across syncs",
+                new WearableChannel(mContext, null).wasPushed(forecast));
+    }
+}
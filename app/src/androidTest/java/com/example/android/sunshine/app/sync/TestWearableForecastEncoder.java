@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+
+public class TestWearableForecastEncoder extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWearableForecastEncoder.class.getSimpleName();
+
+    // Two days as the wearable's TestWearableForecast expects them, so that both sides agree.
+    static final byte[] TWO_DAY_PAYLOAD = {
+            0x01, 0x02,
+            (byte) 0xa0, (byte) 0x83, 0x01, (byte) 0xa0, 0x06, (byte) 0xac, 0x03, (byte) 0xaa, 0x01,
+            0x01, (byte) 0xf4, 0x03, 0x45, 0x78
+    };
+
+    public void testEncoding() {
+        WearableForecastEncoder encoder = new WearableForecastEncoder();
+        encoder.addDay(16800, 800, 21.4, 12.9);
+        encoder.addDay(16801, 500, -3.5, -9.5);
+        assertTrue("Error: The payload doesn't match the format the wearable reads",
+                Arrays.equals(TWO_DAY_PAYLOAD, encoder.toByteArray()));
+    }
+
+    public void testFourteenDayForecastSize() throws Exception {
+        ForecastJsonParser.Forecast forecast =
+                ForecastJsonParser.parse(TestForecastJsonParser.RECORDED_14_DAY_FORECAST);
+        WearableForecastEncoder encoder = new WearableForecastEncoder();
+        for (int i = 0; i < forecast.days.size(); i++) {
+            ForecastJsonParser.Day day = forecast.days.get(i);
+            encoder.addDay(16800 + i, day.weatherId, day.high, day.low);
+        }
+        byte[] payload = encoder.toByteArray();
+        Log.i(LOG_TAG, payload.length + " bytes for " + encoder.getDayCount() + " days");
+
+        assertEquals(14, encoder.getDayCount());
+        // The header, the first day's full date, then at most seven bytes a day.
+        assertTrue("Error: 14 days took " + payload.length + " bytes",
+                payload.length <= 2 + 2 + 14 * 7);
+    }
+
+    public void testDaysOutOfOrderAreRejected() {
+        WearableForecastEncoder encoder = new WearableForecastEncoder();
+        encoder.addDay(16801, 800, 20, 10);
+        try {
+            encoder.addDay(16800, 800, 20, 10);
+            fail("Error: A day before the previous one was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected, dates are coded as deltas
+        }
+    }
+}
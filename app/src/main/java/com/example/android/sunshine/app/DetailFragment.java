@@ -175,7 +175,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // creating a Cursor for the data being displayed.
             return new CursorLoader(
                     getActivity(),
-                    mUri,
+                    WeatherContract.buildCompactUri(mUri),
                     DETAIL_COLUMNS,
                     null,
                     null,
@@ -45,6 +45,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private boolean mHasBound;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -124,6 +125,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        boolean firstBind = !mHasBound;
+        if (firstBind) {
+            StartupTrace.beginSection(StartupTrace.FORECAST_FIRST_BIND);
+        }
         mCursor.moveToPosition(position);
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
@@ -183,6 +188,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        if (firstBind) {
+            mHasBound = true;
+            StartupTrace.endSection(StartupTrace.FORECAST_FIRST_BIND);
+            StartupTrace.endSpan(StartupTrace.TIME_TO_FORECAST);
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -45,6 +45,7 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
@@ -59,6 +60,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // Shown until the loader delivers its first cursor, see showForecastSnapshot().
+    private Cursor mSnapshotCursor;
 
     private static final String SELECTED_KEY = "selected_position";
 
@@ -259,15 +262,45 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        // A loader that already exists, say after a rotation, delivers its data straight away.
+        if (getLoaderManager().getLoader(FORECAST_LOADER) == null) {
+            showForecastSnapshot();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
+        if (mSnapshotCursor != null) {
+            // The snapshot is of the old location.
+            mForecastAdapter.swapCursor(null);
+            closeForecastSnapshot();
+        }
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
+    /*
+        On a cold start, the loader takes a while to open the database and run its query.  Until
+        it's done, show the forecast the last sync left in the snapshot file, so the list is
+        filled in the very first frame.
+     */
+    private void showForecastSnapshot() {
+        Cursor snapshot = ForecastSnapshotFile.query(getActivity(),
+                Utility.getPreferredLocation(getActivity()), FORECAST_COLUMNS);
+        if (snapshot != null) {
+            mSnapshotCursor = snapshot;
+            mForecastAdapter.swapCursor(snapshot);
+        }
+    }
+
+    private void closeForecastSnapshot() {
+        if (mSnapshotCursor != null) {
+            mSnapshotCursor.close();
+            mSnapshotCursor = null;
+        }
+    }
+
     private void openPreferredLocationInMap() {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
@@ -305,6 +338,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
+        StartupTrace.beginSection(StartupTrace.FORECAST_CREATE_LOADER);
+        StartupTrace.beginSpan(StartupTrace.FORECAST_LOAD);
 
         // To only show current and future dates, filter the query to return weather only for
         // dates after or including today.
@@ -316,17 +351,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
+        // The loader holds on to this cursor for as long as the list is shown, so ask for the
+        // compact one rather than keeping a CursorWindow around for a couple of weeks of rows.
+        CursorLoader loader = new CursorLoader(getActivity(),
+                WeatherContract.buildCompactUri(weatherForLocationUri),
                 FORECAST_COLUMNS,
                 null,
                 null,
                 sortOrder);
+        StartupTrace.endSection(StartupTrace.FORECAST_CREATE_LOADER);
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        StartupTrace.endSpan(StartupTrace.FORECAST_LOAD);
         mForecastAdapter.swapCursor(data);
+        closeForecastSnapshot();
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
@@ -377,6 +418,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onDestroy() {
         super.onDestroy();
+        closeForecastSnapshot();
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
@@ -385,6 +427,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         mForecastAdapter.swapCursor(null);
+        closeForecastSnapshot();
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
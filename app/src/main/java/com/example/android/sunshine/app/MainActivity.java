@@ -33,6 +33,7 @@ import android.view.View;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncScheduler;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
@@ -48,6 +49,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSpan(StartupTrace.TIME_TO_FORECAST);
+        StartupTrace.beginSection(StartupTrace.MAIN_ON_CREATE);
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
@@ -89,7 +92,13 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
+        StartupTrace.beginSection(StartupTrace.SYNC_ACCOUNT_SETUP);
         SunshineSyncAdapter.initializeSyncAdapter(this);
+        StartupTrace.endSection(StartupTrace.SYNC_ACCOUNT_SETUP);
+        if (savedInstanceState == null) {
+            // The sync schedule follows when the user looks at the forecast.
+            SyncScheduler.recordAppOpenInBackground(this);
+        }
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
@@ -107,6 +116,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 startService(intent);
             }
         }
+        StartupTrace.endSection(StartupTrace.MAIN_ON_CREATE);
     }
 
     @Override
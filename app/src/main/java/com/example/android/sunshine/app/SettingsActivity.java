@@ -16,6 +16,8 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Build;
@@ -26,15 +28,23 @@ import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 import android.support.design.widget.Snackbar;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.Toast;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncMetrics;
 import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
 
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.List;
+
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
  * <p>
@@ -59,7 +69,16 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_saved_locations_key)));
 
+        findPreference(getString(R.string.pref_sync_metrics_key)).setOnPreferenceClickListener(
+                new Preference.OnPreferenceClickListener() {
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        showSyncMetrics();
+                        return true;
+                    }
+                });
 
         // If we are using a PlacePicker location, we need to show attributions.
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -79,6 +98,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.registerOnSharedPreferenceChangeListener(this);
+        updateSyncMetricsSummary();
         super.onResume();
     }
 
@@ -135,6 +155,9 @@ public class SettingsActivity extends PreferenceActivity
                     // is valid
                     preference.setSummary(stringValue);
             }
+        } else if (key.equals(getString(R.string.pref_saved_locations_key))
+                && stringValue.trim().length() == 0) {
+            preference.setSummary(getString(R.string.pref_saved_locations_empty));
         } else {
             // For other preferences, set the summary to the value's simple string representation.
             preference.setSummary(stringValue);
@@ -142,6 +165,50 @@ public class SettingsActivity extends PreferenceActivity
 
     }
 
+    private void updateSyncMetricsSummary() {
+        Preference preference = findPreference(getString(R.string.pref_sync_metrics_key));
+        JSONObject latest = new SyncMetrics(this).getLatestRecord();
+        if (latest == null) {
+            preference.setSummary(getString(R.string.pref_sync_metrics_empty));
+        } else {
+            preference.setSummary(getString(R.string.pref_sync_metrics_summary,
+                    DateUtils.getRelativeTimeSpanString(SyncMetrics.getStartMillis(latest)),
+                    SyncMetrics.getDurationMillis(latest)));
+        }
+    }
+
+    // Lists the recorded syncs, newest first, with a button to export them for a closer look.
+    private void showSyncMetrics() {
+        final SyncMetrics syncMetrics = new SyncMetrics(this);
+        List<JSONObject> records = syncMetrics.getRecords();
+        StringBuilder message = new StringBuilder();
+        for (JSONObject record : records) {
+            message.append(SyncMetrics.describe(this, record)).append('\n');
+        }
+        if (records.isEmpty()) {
+            message.append(getString(R.string.pref_sync_metrics_empty));
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this)
+                .setTitle(R.string.pref_sync_metrics_label)
+                .setMessage(message)
+                .setNegativeButton(android.R.string.cancel, null);
+        if (!records.isEmpty()) {
+            builder.setPositiveButton(R.string.sync_metrics_export,
+                    new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            File file = syncMetrics.export();
+                            Toast.makeText(SettingsActivity.this, file != null
+                                            ? getString(R.string.sync_metrics_exported, file)
+                                            : getString(R.string.sync_metrics_export_failed),
+                                    Toast.LENGTH_LONG).show();
+                        }
+                    });
+        }
+        builder.show();
+    }
+
     // This gets called before the preference is changed
     @Override
     public boolean onPreferenceChange(Preference preference, Object value) {
@@ -175,6 +242,9 @@ public class SettingsActivity extends PreferenceActivity
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
+        } else if ( key.equals(getString(R.string.pref_saved_locations_key)) ) {
+            // fetch any newly saved locations now, so that switching to them is instant
+            SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
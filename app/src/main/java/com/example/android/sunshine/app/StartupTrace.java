@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.util.HashMap;
+
+/**
+ * Named trace sections around the steps between launching MainActivity and the forecast list
+ * showing up.
+ *
+ * Sections show up in systrace (run it with {@code -a com.example.android.sunshine.app}), and
+ * the duration of the latest run of each is also kept in memory, so that the startup
+ * benchmark under androidTest can read them back.  Spans cover steps that start in one
+ * callback and end in another, like a loader's query; systrace can't show those, so they are
+ * only timed.
+ */
+public class StartupTrace {
+
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    // Sections
+    public static final String MAIN_ON_CREATE = "MainActivity.onCreate";
+    public static final String SYNC_ACCOUNT_SETUP = "SunshineSyncAdapter.initializeSyncAdapter";
+    public static final String FORECAST_CREATE_LOADER = "ForecastFragment.onCreateLoader";
+    public static final String FORECAST_FIRST_BIND = "ForecastAdapter.firstBind";
+
+    // Spans
+    /** From onCreateLoader until the loader delivers its cursor. */
+    public static final String FORECAST_LOAD = "ForecastFragment.load";
+    /** From MainActivity.onCreate until the first forecast row is bound. */
+    public static final String TIME_TO_FORECAST = "MainActivity.timeToForecast";
+    /** The sync account setup, on the background thread initializeSyncAdapter hands it to. */
+    public static final String SYNC_BOOTSTRAP = "SunshineSyncAdapter.bootstrap";
+
+    private static final HashMap<String, Long> sStartNanos = new HashMap<String, Long>();
+    private static final HashMap<String, Long> sDurationNanos = new HashMap<String, Long>();
+
+    /**
+     * Starts a section.  Sections must nest, and end on the thread they began on.
+     */
+    public static void beginSection(String name) {
+        TraceCompat.beginSection(name);
+        beginSpan(name);
+    }
+
+    /**
+     * Ends the innermost section, which must be the one named.
+     */
+    public static void endSection(String name) {
+        endSpan(name);
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Starts timing a span, replacing any run of it that hasn't ended yet.
+     */
+    public static synchronized void beginSpan(String name) {
+        sStartNanos.put(name, System.nanoTime());
+    }
+
+    /**
+     * Stops timing a span and records its duration.  Does nothing if the span isn't running,
+     * so it is safe to call on every pass through a code path that only ends it the first time.
+     */
+    public static synchronized void endSpan(String name) {
+        Long start = sStartNanos.remove(name);
+        if (start != null) {
+            long duration = System.nanoTime() - start;
+            sDurationNanos.put(name, duration);
+            Log.v(LOG_TAG, name + " took " + duration / 1000 + "us");
+        }
+    }
+
+    /**
+     * @return true while the span has begun and not yet ended
+     */
+    public static synchronized boolean isRunning(String name) {
+        return sStartNanos.containsKey(name);
+    }
+
+    /**
+     * @return how long the latest completed run of the section or span took, or -1 if none has
+     * completed since the last {@link #reset()}
+     */
+    public static synchronized long getDurationNanos(String name) {
+        Long duration = sDurationNanos.get(name);
+        return duration == null ? -1 : duration;
+    }
+
+    /**
+     * Forgets every recorded duration and running span.
+     */
+    public static synchronized void reset() {
+        sStartNanos.clear();
+        sDurationNanos.clear();
+    }
+}
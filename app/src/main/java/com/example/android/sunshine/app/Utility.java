@@ -26,7 +26,9 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class Utility {
@@ -60,6 +62,26 @@ public class Utility {
                 context.getString(R.string.pref_location_default));
     }
 
+    /**
+     * @return the locations the user wants kept in sync besides the preferred one, in the order
+     * they were entered, without blanks, duplicates or the preferred location itself
+     */
+    public static List<String> getSavedLocations(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String savedLocations = prefs.getString(
+                context.getString(R.string.pref_saved_locations_key), "");
+        String preferredLocation = getPreferredLocation(context);
+        List<String> locations = new ArrayList<String>();
+        for (String location : savedLocations.split(",")) {
+            location = location.trim();
+            if (location.length() > 0 && !location.equals(preferredLocation)
+                    && !locations.contains(location)) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
     public static boolean isMetric(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         return prefs.getString(context.getString(R.string.pref_units_key),
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * A read-only cursor holding a small result set column by column in primitive arrays.
+ *
+ * A SQLiteCursor keeps its rows in a CursorWindow, which reserves 2MB of ashmem however few
+ * rows it holds, for as long as the cursor stays open.  Our queries return a few dozen rows at
+ * most, so the provider copies them into one of these when asked to (see
+ * {@link WeatherContract#PARAM_COMPACT}) and closes the SQLite cursor straight away.
+ *
+ * Each column is stored in the narrowest array that holds all of its values: long[] when every
+ * value is an integer, double[] when they are all numbers, and String[] or byte[][] otherwise.
+ * Conversions between types follow the ones CursorWindow does.
+ */
+class CompactCursor extends AbstractCursor {
+
+    // Results bigger than this are left in their SQLite cursor.
+    static final int MAX_ROWS = 256;
+
+    private final String[] mColumnNames;
+    private final int mCount;
+    private final int[] mColumnTypes;
+    private final Object[] mColumns;
+    private final boolean[][] mNulls;
+
+    /**
+     * Copies every row of the given cursor.  The source is left positioned after its last row,
+     * and it is up to the caller to close it.
+     */
+    CompactCursor(Cursor source) {
+        mColumnNames = source.getColumnNames();
+        mCount = source.getCount();
+        int columnCount = mColumnNames.length;
+        mColumnTypes = new int[columnCount];
+        mColumns = new Object[columnCount];
+        mNulls = new boolean[columnCount][];
+
+        // First pass: find the narrowest type for each column.
+        for (int row = 0; row < mCount && source.moveToPosition(row); row++) {
+            for (int column = 0; column < columnCount; column++) {
+                mColumnTypes[column] = widen(mColumnTypes[column], source.getType(column));
+            }
+        }
+
+        for (int column = 0; column < columnCount; column++) {
+            switch (mColumnTypes[column]) {
+                case FIELD_TYPE_INTEGER:
+                    mColumns[column] = new long[mCount];
+                    break;
+                case FIELD_TYPE_FLOAT:
+                    mColumns[column] = new double[mCount];
+                    break;
+                case FIELD_TYPE_BLOB:
+                    mColumns[column] = new byte[mCount][];
+                    break;
+                default:
+                    // Strings, and columns that are null in every row.
+                    mColumns[column] = new String[mCount];
+            }
+            mNulls[column] = new boolean[mCount];
+        }
+
+        // Second pass: copy the values.
+        for (int row = 0; row < mCount && source.moveToPosition(row); row++) {
+            for (int column = 0; column < columnCount; column++) {
+                if (source.isNull(column)) {
+                    mNulls[column][row] = true;
+                    continue;
+                }
+                switch (mColumnTypes[column]) {
+                    case FIELD_TYPE_INTEGER:
+                        ((long[]) mColumns[column])[row] = source.getLong(column);
+                        break;
+                    case FIELD_TYPE_FLOAT:
+                        ((double[]) mColumns[column])[row] = source.getDouble(column);
+                        break;
+                    case FIELD_TYPE_BLOB:
+                        ((byte[][]) mColumns[column])[row] = source.getBlob(column);
+                        break;
+                    default:
+                        ((String[]) mColumns[column])[row] = source.getString(column);
+                }
+            }
+        }
+        source.moveToPosition(mCount);
+    }
+
+    // FIELD_TYPE_NULL < INTEGER < FLOAT < STRING < BLOB, except that mixing a blob with anything
+    // but nulls falls back to strings.
+    private static int widen(int current, int type) {
+        if (current == FIELD_TYPE_NULL || current == type) {
+            return type;
+        }
+        if (type == FIELD_TYPE_NULL) {
+            return current;
+        }
+        if (current == FIELD_TYPE_BLOB || type == FIELD_TYPE_BLOB) {
+            return FIELD_TYPE_STRING;
+        }
+        return Math.max(current, type);
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getType(int column) {
+        checkPosition();
+        return mNulls[column][mPos] ? FIELD_TYPE_NULL : mColumnTypes[column];
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        checkPosition();
+        return mNulls[column][mPos];
+    }
+
+    @Override
+    public String getString(int column) {
+        checkPosition();
+        if (mNulls[column][mPos]) {
+            return null;
+        }
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return Long.toString(((long[]) mColumns[column])[mPos]);
+            case FIELD_TYPE_FLOAT:
+                return Double.toString(((double[]) mColumns[column])[mPos]);
+            case FIELD_TYPE_BLOB:
+                return new String(((byte[][]) mColumns[column])[mPos]);
+            default:
+                return ((String[]) mColumns[column])[mPos];
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        checkPosition();
+        if (mNulls[column][mPos]) {
+            return 0;
+        }
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return ((long[]) mColumns[column])[mPos];
+            case FIELD_TYPE_FLOAT:
+                return (long) ((double[]) mColumns[column])[mPos];
+            default:
+                return (long) parseDouble(getString(column));
+        }
+    }
+
+    @Override
+    public double getDouble(int column) {
+        checkPosition();
+        if (mNulls[column][mPos]) {
+            return 0;
+        }
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER:
+                return ((long[]) mColumns[column])[mPos];
+            case FIELD_TYPE_FLOAT:
+                return ((double[]) mColumns[column])[mPos];
+            default:
+                return parseDouble(getString(column));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        checkPosition();
+        if (mNulls[column][mPos]) {
+            return null;
+        }
+        if (mColumnTypes[column] == FIELD_TYPE_BLOB) {
+            return ((byte[][]) mColumns[column])[mPos];
+        }
+        return getString(column).getBytes();
+    }
+
+    // Like CursorWindow, text that isn't a number reads as 0.
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable copy of the preferred location's forecast from today onwards, held in primitive
+ * arrays ordered by date.
+ *
+ * The widgets, Muzei and the sync adapter's notification all show the same few days, so rather
+ * than each of them running the weather/location join and walking a cursor, they share the
+ * process-wide snapshot returned by {@link #get(Context)}.  WeatherProvider invalidates it on
+ * every write, so it is rebuilt at most once per sync, by whichever consumer asks first.
+ */
+public class ForecastSnapshot {
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+    private static final int INDEX_COORD_LAT = 6;
+    private static final int INDEX_COORD_LONG = 7;
+
+    // Bumped on every provider write.  A snapshot is only served while it was built at the
+    // current generation, which also covers a write racing with a rebuild.
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+    private static volatile ForecastSnapshot sSnapshot;
+
+    private final int mGeneration;
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mShortDescs;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final double mCoordLat;
+    private final double mCoordLong;
+
+    private ForecastSnapshot(int generation, String locationSetting, long startDate,
+                             Cursor cursor) {
+        mGeneration = generation;
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        int size = cursor == null ? 0 : cursor.getCount();
+        mIds = new long[size];
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mShortDescs = new String[size];
+        mMaxTemps = new double[size];
+        mMinTemps = new double[size];
+        for (int i = 0; i < size && cursor.moveToPosition(i); i++) {
+            mIds[i] = cursor.getLong(INDEX_ID);
+            mDates[i] = cursor.getLong(INDEX_DATE);
+            mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            mShortDescs[i] = cursor.getString(INDEX_SHORT_DESC);
+            mMaxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            mMinTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+        }
+        // Every row comes from the same location.
+        boolean hasRows = size > 0 && cursor.moveToFirst();
+        mCoordLat = hasRows ? cursor.getDouble(INDEX_COORD_LAT) : 0;
+        mCoordLong = hasRows ? cursor.getDouble(INDEX_COORD_LONG) : 0;
+    }
+
+    /**
+     * @return the forecast for the preferred location from today onwards, built from the
+     * provider only if nothing was written since the last call, the preferred location changed
+     * or the day rolled over.  Never null, but may be empty.
+     */
+    public static ForecastSnapshot get(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        ForecastSnapshot snapshot = sSnapshot;
+        if (snapshot != null && snapshot.mGeneration == sGeneration.get()
+                && snapshot.mStartDate == startDate
+                && snapshot.mLocationSetting.equals(locationSetting)) {
+            return snapshot;
+        }
+
+        // Read the generation before querying, so that a write landing during the query
+        // leaves this snapshot stale instead of cached.
+        int generation = sGeneration.get();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, startDate),
+                SNAPSHOT_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            snapshot = new ForecastSnapshot(generation, locationSetting, startDate, cursor);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        sSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Marks the cached snapshot as stale.  WeatherProvider calls this after every write.
+     */
+    static void invalidate() {
+        sGeneration.incrementAndGet();
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * @return the normalized date the snapshot starts from, which was today when it was built
+     */
+    public long getStartDate() {
+        return mStartDate;
+    }
+
+    /**
+     * @return the location's latitude, or 0 if the snapshot is empty
+     */
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    /**
+     * @return the location's longitude, or 0 if the snapshot is empty
+     */
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public boolean isEmpty() {
+        return mDates.length == 0;
+    }
+
+    /**
+     * @return the position of the given normalized date, or a negative number if the snapshot
+     * does not hold it
+     */
+    public int indexOfDate(long date) {
+        return Arrays.binarySearch(mDates, date);
+    }
+
+    public long getId(int i) {
+        return mIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+}
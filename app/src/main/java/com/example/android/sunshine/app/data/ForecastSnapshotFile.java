@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The preferred location's forecast, written to a small file at the end of every sync so that
+ * ForecastFragment has something to show in its first frame, before its CursorLoader has even
+ * opened the database.
+ *
+ * The file is laid out in fixed-width columns, so {@link #query(Context, String, String[])}
+ * maps it and reads values straight out of the mapping rather than parsing it:
+ *
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   long   start date the snapshot was built for
+ *   double latitude
+ *   double longitude
+ *   int    row count n
+ *   short  location setting length, followed by its UTF-8 bytes
+ *   long   _id[n]
+ *   long   date[n]
+ *   double max_temp[n]
+ *   double min_temp[n]
+ *   int    weather_id[n]
+ *   int    short_desc end offset[n], into the UTF-8 text that follows
+ * </pre>
+ *
+ * Everything is big-endian, ByteBuffer's default.
+ */
+public class ForecastSnapshotFile {
+
+    private static final String LOG_TAG = ForecastSnapshotFile.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast_snapshot";
+
+    private static final int MAGIC = 0x53554e53;
+    // Bump whenever the layout changes, older files are then ignored.
+    private static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Fixed part of the header, up to the location setting's bytes.
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 2;
+    // Fixed-width bytes per row, not counting the description text.
+    private static final int ROW_SIZE = 8 + 8 + 8 + 8 + 4 + 4;
+
+    /**
+     * Replaces the file with the given snapshot.  The new file is written next to the old one
+     * and renamed over it, so a reader never sees a partial file.
+     *
+     * @return false if the file could not be written
+     */
+    public static boolean write(Context context, ForecastSnapshot snapshot) {
+        int count = snapshot.size();
+        byte[] location = snapshot.getLocationSetting().getBytes(UTF_8);
+        byte[][] descs = new byte[count][];
+        int textSize = 0;
+        for (int i = 0; i < count; i++) {
+            String desc = snapshot.getShortDesc(i);
+            descs[i] = desc == null ? new byte[0] : desc.getBytes(UTF_8);
+            textSize += descs[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                HEADER_SIZE + location.length + count * ROW_SIZE + textSize);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(snapshot.getStartDate())
+                .putDouble(snapshot.getCoordLat())
+                .putDouble(snapshot.getCoordLong())
+                .putInt(count)
+                .putShort((short) location.length)
+                .put(location);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(snapshot.getId(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(snapshot.getDate(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(snapshot.getMaxTemp(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(snapshot.getMinTemp(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(snapshot.getWeatherId(i));
+        }
+        int textEnd = 0;
+        for (int i = 0; i < count; i++) {
+            textEnd += descs[i].length;
+            buffer.putInt(textEnd);
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.put(descs[i]);
+        }
+        buffer.flip();
+
+        File file = getFile(context);
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not write the forecast snapshot", e);
+            temp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failing.
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the file, for when the forecast it holds no longer applies.
+     */
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    /**
+     * Maps the file and returns the rows from today onwards as a read-only cursor with the
+     * given projection.  Only the columns ForecastFragment asks for are available.  This is
+     * cheap enough to call on the main thread: the file is a few hundred bytes and values are
+     * only read from the mapping as the cursor is walked.
+     *
+     * @return null if there is no file, it holds a different location, it is unreadable, or
+     * none of its days are left
+     * @throws IllegalArgumentException if the projection names a column the file doesn't hold
+     */
+    public static Cursor query(Context context, String locationSetting, String[] projection) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer;
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                // The mapping stays valid after the file is closed.
+                buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            } finally {
+                in.close();
+            }
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            // The start date; rows are checked against today one by one below.
+            buffer.getLong();
+            double coordLat = buffer.getDouble();
+            double coordLong = buffer.getDouble();
+            int count = buffer.getInt();
+            byte[] location = new byte[buffer.getShort()];
+            buffer.get(location);
+            if (!locationSetting.equals(new String(location, UTF_8))) {
+                return null;
+            }
+
+            int idsOffset = buffer.position();
+            if (count <= 0 || buffer.remaining() < count * ROW_SIZE || buffer.remaining()
+                    < count * ROW_SIZE + buffer.getInt(idsOffset + count * ROW_SIZE - 4)) {
+                Log.w(LOG_TAG, "Ignoring an empty or truncated forecast snapshot");
+                return null;
+            }
+
+            // Skip the days that are already over.
+            int datesOffset = idsOffset + count * 8;
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            int first = 0;
+            while (first < count && buffer.getLong(datesOffset + first * 8) < today) {
+                first++;
+            }
+            if (first == count) {
+                return null;
+            }
+            return new SnapshotCursor(projection, buffer, idsOffset, count, first,
+                    locationSetting, coordLat, coordLong);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            Log.w(LOG_TAG, "Could not read the forecast snapshot", e);
+            return null;
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Reads rows straight out of the mapped file.
+     */
+    private static class SnapshotCursor extends AbstractCursor {
+
+        private static final int FIELD_ID = 0;
+        private static final int FIELD_DATE = 1;
+        private static final int FIELD_SHORT_DESC = 2;
+        private static final int FIELD_MAX_TEMP = 3;
+        private static final int FIELD_MIN_TEMP = 4;
+        private static final int FIELD_LOCATION_SETTING = 5;
+        private static final int FIELD_WEATHER_ID = 6;
+        private static final int FIELD_COORD_LAT = 7;
+        private static final int FIELD_COORD_LONG = 8;
+
+        private final String[] mColumnNames;
+        private final int[] mFields;
+        private final ByteBuffer mBuffer;
+        private final int mFirst;
+        private final int mCount;
+        private final String mLocationSetting;
+        private final double mCoordLat;
+        private final double mCoordLong;
+
+        private final int mIdsOffset;
+        private final int mDatesOffset;
+        private final int mMaxTempsOffset;
+        private final int mMinTempsOffset;
+        private final int mWeatherIdsOffset;
+        private final int mTextEndsOffset;
+        private final int mTextOffset;
+
+        SnapshotCursor(String[] projection, ByteBuffer buffer, int idsOffset, int count,
+                       int first, String locationSetting, double coordLat, double coordLong) {
+            mColumnNames = new String[projection.length];
+            mFields = new int[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                // Like SQLite, report "weather._id" as "_id".
+                String name = projection[i];
+                mColumnNames[i] = name.substring(name.lastIndexOf('.') + 1);
+                mFields[i] = getField(mColumnNames[i]);
+            }
+            mBuffer = buffer;
+            mFirst = first;
+            mCount = count - first;
+            mLocationSetting = locationSetting;
+            mCoordLat = coordLat;
+            mCoordLong = coordLong;
+
+            mIdsOffset = idsOffset;
+            mDatesOffset = mIdsOffset + count * 8;
+            mMaxTempsOffset = mDatesOffset + count * 8;
+            mMinTempsOffset = mMaxTempsOffset + count * 8;
+            mWeatherIdsOffset = mMinTempsOffset + count * 8;
+            mTextEndsOffset = mWeatherIdsOffset + count * 4;
+            mTextOffset = mTextEndsOffset + count * 4;
+        }
+
+        private static int getField(String name) {
+            switch (name) {
+                case WeatherContract.WeatherEntry._ID:
+                    return FIELD_ID;
+                case WeatherContract.WeatherEntry.COLUMN_DATE:
+                    return FIELD_DATE;
+                case WeatherContract.WeatherEntry.COLUMN_SHORT_DESC:
+                    return FIELD_SHORT_DESC;
+                case WeatherContract.WeatherEntry.COLUMN_MAX_TEMP:
+                    return FIELD_MAX_TEMP;
+                case WeatherContract.WeatherEntry.COLUMN_MIN_TEMP:
+                    return FIELD_MIN_TEMP;
+                case WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING:
+                    return FIELD_LOCATION_SETTING;
+                case WeatherContract.WeatherEntry.COLUMN_WEATHER_ID:
+                    return FIELD_WEATHER_ID;
+                case WeatherContract.LocationEntry.COLUMN_COORD_LAT:
+                    return FIELD_COORD_LAT;
+                case WeatherContract.LocationEntry.COLUMN_COORD_LONG:
+                    return FIELD_COORD_LONG;
+                default:
+                    throw new IllegalArgumentException("Not in the forecast snapshot: " + name);
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            switch (mFields[column]) {
+                case FIELD_ID:
+                case FIELD_DATE:
+                case FIELD_WEATHER_ID:
+                    return FIELD_TYPE_INTEGER;
+                case FIELD_SHORT_DESC:
+                case FIELD_LOCATION_SETTING:
+                    return FIELD_TYPE_STRING;
+                default:
+                    return FIELD_TYPE_FLOAT;
+            }
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return false;
+        }
+
+        @Override
+        public String getString(int column) {
+            checkPosition();
+            int row = mFirst + mPos;
+            switch (mFields[column]) {
+                case FIELD_SHORT_DESC:
+                    int start = row == 0 ? 0 : mBuffer.getInt(mTextEndsOffset + (row - 1) * 4);
+                    int end = mBuffer.getInt(mTextEndsOffset + row * 4);
+                    byte[] text = new byte[end - start];
+                    for (int i = 0; i < text.length; i++) {
+                        text[i] = mBuffer.get(mTextOffset + start + i);
+                    }
+                    return new String(text, UTF_8);
+                case FIELD_LOCATION_SETTING:
+                    return mLocationSetting;
+                case FIELD_MAX_TEMP:
+                case FIELD_MIN_TEMP:
+                case FIELD_COORD_LAT:
+                case FIELD_COORD_LONG:
+                    return Double.toString(getDouble(column));
+                default:
+                    return Long.toString(getLong(column));
+            }
+        }
+
+        @Override
+        public long getLong(int column) {
+            checkPosition();
+            int row = mFirst + mPos;
+            switch (mFields[column]) {
+                case FIELD_ID:
+                    return mBuffer.getLong(mIdsOffset + row * 8);
+                case FIELD_DATE:
+                    return mBuffer.getLong(mDatesOffset + row * 8);
+                case FIELD_WEATHER_ID:
+                    return mBuffer.getInt(mWeatherIdsOffset + row * 4);
+                case FIELD_SHORT_DESC:
+                case FIELD_LOCATION_SETTING:
+                    // Like CursorWindow, text that isn't a number reads as 0.
+                    try {
+                        return Long.parseLong(getString(column));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                default:
+                    return (long) getDouble(column);
+            }
+        }
+
+        @Override
+        public double getDouble(int column) {
+            checkPosition();
+            int row = mFirst + mPos;
+            switch (mFields[column]) {
+                case FIELD_MAX_TEMP:
+                    return mBuffer.getDouble(mMaxTempsOffset + row * 8);
+                case FIELD_MIN_TEMP:
+                    return mBuffer.getDouble(mMinTempsOffset + row * 8);
+                case FIELD_COORD_LAT:
+                    return mCoordLat;
+                case FIELD_COORD_LONG:
+                    return mCoordLong;
+                default:
+                    return getLong(column);
+            }
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+    }
+}
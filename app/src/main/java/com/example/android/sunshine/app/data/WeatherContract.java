@@ -43,6 +43,58 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HOURLY = "hourly";
+
+    // Provider call() that upserts weather rows, writing only the rows that differ from what is
+    // stored.  Takes the rows as a ContentValues[] in EXTRA_VALUES and returns one ROW_* code per
+    // row in EXTRA_ROW_CHANGES, plus the number of inserted or updated rows in
+    // EXTRA_CHANGED_COUNT.
+    public static final String METHOD_UPSERT_WEATHER = "upsert_weather";
+    public static final String EXTRA_VALUES = "values";
+    public static final String EXTRA_ROW_CHANGES = "row_changes";
+    public static final String EXTRA_CHANGED_COUNT = "changed_count";
+
+    public static final int ROW_UNCHANGED = 0;
+    public static final int ROW_INSERTED = 1;
+    public static final int ROW_UPDATED = 2;
+
+    // Provider call()s taking a WeatherRows batch (see WeatherRows#toBundle) as the extras, for
+    // callers that write many rows at once.  METHOD_INSERT_WEATHER_ROWS inserts every row and
+    // returns the inserted count in EXTRA_CHANGED_COUNT; METHOD_UPSERT_WEATHER_ROWS behaves like
+    // METHOD_UPSERT_WEATHER.
+    public static final String METHOD_INSERT_WEATHER_ROWS = "insert_weather_rows";
+    public static final String METHOD_UPSERT_WEATHER_ROWS = "upsert_weather_rows";
+
+    // Optional extra for METHOD_UPSERT_WEATHER_ROWS: a normalized date before which all weather
+    // rows are deleted once the upsert is done.  The number of deleted rows comes back in
+    // EXTRA_PURGED_COUNT, and observers get a single notification for both writes.
+    public static final String EXTRA_PURGE_BEFORE = "purge_before";
+    public static final String EXTRA_PURGED_COUNT = "purged_count";
+
+    // Query parameter asking the provider to hand back small results in a compact, primitive
+    // column cursor instead of a SQLiteCursor and its 2MB CursorWindow.  Worth it for cursors
+    // that are held on to, such as a loader's.
+    public static final String PARAM_COMPACT = "compact";
+
+    public static Uri buildCompactUri(Uri uri) {
+        return uri.buildUpon().appendQueryParameter(PARAM_COMPACT, "1").build();
+    }
+
+    public static boolean isCompactUri(Uri uri) {
+        return "1".equals(uri.getQueryParameter(PARAM_COMPACT));
+    }
+
+    // Query parameter for writes that shouldn't fail or churn on rows already stored.  On the
+    // weather table it turns a bulkInsert into a change-detecting upsert: rows identical to the
+    // stored ones are left alone, and observers are only notified if something actually
+    // changed.  An update through the weather upsert URI upserts its values as one row,
+    // ignoring the selection, and returns 1 if the row was inserted or changed, 0 otherwise.
+    // On the location table see LocationEntry#buildLocationUpsertUri.
+    public static final String PARAM_UPSERT = "upsert";
+
+    public static boolean isUpsertUri(Uri uri) {
+        return "1".equals(uri.getQueryParameter(PARAM_UPSERT));
+    }
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -84,6 +136,13 @@ public class WeatherContract {
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        // An insert through this URI returns the existing row for the location setting, if
+        // there is one, instead of failing on the UNIQUE constraint.  Lets a batch insert a
+        // location and refer back to its ID without first querying for it.
+        public static Uri buildLocationUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_UPSERT, "1").build();
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -130,6 +189,10 @@ public class WeatherContract {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        public static Uri buildWeatherUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_UPSERT, "1").build();
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -165,4 +228,114 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the table contents of the hourly table, which holds the 3-hourly
+        forecast.  There are about ten times as many of these rows as there are days, so they are
+        stored compactly: the row's _ID is its key, values are scaled to integers and the
+        conditions are packed into a single column.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // _ID is not an arbitrary row number but buildKey(location_id, time), so that a
+        // location's rows are stored next to each other in time order and a time range is a
+        // range of row IDs.  No extra index is needed.  The provider fills it in on insert.
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Start of the forecast period, stored as long in seconds (not milliseconds) since the
+        // epoch, as sent by the API.
+        public static final String COLUMN_TIME = "time";
+        // Temperature in tenths of a degree, see toScaled and fromScaled.
+        public static final String COLUMN_TEMP = "temp";
+        // Wind speed in tenths of the unit sent by the API.
+        public static final String COLUMN_WIND_SPEED = "wind";
+        // Pressure in tenths of a hPa.
+        public static final String COLUMN_PRESSURE = "pressure";
+        // Weather id, humidity and wind direction packed into one integer, see packConditions.
+        public static final String COLUMN_CONDITIONS = "conditions";
+
+        // Scaled values are stored as round(value * SCALE).
+        public static final int SCALE = 10;
+
+        // Layout of COLUMN_CONDITIONS: bits 0-9 hold the weather id, bits 10-16 the humidity
+        // in percent and bits 17-20 the wind direction as one of 16 compass points.
+        private static final int WEATHER_ID_BITS = 10;
+        private static final int HUMIDITY_BITS = 7;
+        private static final int COMPASS_POINTS = 16;
+
+        public static long buildKey(long locationId, long time) {
+            return (locationId << 32) | (time & 0xffffffffL);
+        }
+
+        public static int toScaled(double value) {
+            return (int) Math.round(value * SCALE);
+        }
+
+        public static double fromScaled(int value) {
+            return (double) value / SCALE;
+        }
+
+        public static int packConditions(int weatherId, int humidity, double windDirection) {
+            int compassPoint = (int) Math.round(windDirection * COMPASS_POINTS / 360)
+                    % COMPASS_POINTS;
+            if (compassPoint < 0) {
+                compassPoint += COMPASS_POINTS;
+            }
+            return (weatherId & ((1 << WEATHER_ID_BITS) - 1))
+                    | ((humidity & ((1 << HUMIDITY_BITS) - 1)) << WEATHER_ID_BITS)
+                    | (compassPoint << (WEATHER_ID_BITS + HUMIDITY_BITS));
+        }
+
+        public static int getWeatherId(int conditions) {
+            return conditions & ((1 << WEATHER_ID_BITS) - 1);
+        }
+
+        public static int getHumidity(int conditions) {
+            return (conditions >>> WEATHER_ID_BITS) & ((1 << HUMIDITY_BITS) - 1);
+        }
+
+        /**
+         * @return the wind direction in meteorological degrees, to the nearest of 16 compass
+         * points
+         */
+        public static float getWindDirection(int conditions) {
+            return (conditions >>> (WEATHER_ID_BITS + HUMIDITY_BITS)) * 360f / COMPASS_POINTS;
+        }
+
+        public static Uri buildHourlyUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+
+        /**
+         * @param startTime the first time to include, in seconds since the epoch
+         * @param endTime the first time past the range, in seconds since the epoch
+         */
+        public static Uri buildHourlyLocationWithRange(
+                String locationSetting, long startTime, long endTime) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Long.toString(startTime))
+                    .appendPath(Long.toString(endTime)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartTimeFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
+
+        public static long getEndTimeFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(3));
+        }
+    }
 }
@@ -16,9 +16,11 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -27,13 +29,113 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version, make onCreate
+    // build the new schema, and append a Migration to MIGRATIONS that brings the previous
+    // version's schema up to it without losing rows.
+    static final int DATABASE_VERSION = 4;
+
+    // Databases older than this predate the current tables and are recreated instead of migrated.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves every query WeatherProvider runs through its weather/location join: the join finds
+    // the location through location_setting's UNIQUE index, and then seeks this index on
+    // location_id, with either a date range or an exact date, already ordered by date.  The
+    // trailing columns are the ones ForecastFragment, the widgets and the wearable read, so the
+    // forecast list is answered from the index without touching the table.  The UNIQUE
+    // (date, location_id) index still serves date-only lookups such as the sync's purge.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ");";
+
+    // The 3-hourly forecast.  _ID is the packed (location_id, time) key, so the table is stored
+    // in location and time order and needs no index besides its primary key.  All values are
+    // integers, which SQLite stores in as few bytes as they need.
+    private static final String SQL_CREATE_HOURLY_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + HourlyEntry.TABLE_NAME + " (" +
+                    HourlyEntry._ID + " INTEGER PRIMARY KEY ON CONFLICT REPLACE, " +
+                    HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                    HourlyEntry.COLUMN_TIME + " INTEGER NOT NULL, " +
+                    HourlyEntry.COLUMN_TEMP + " INTEGER NOT NULL, " +
+                    HourlyEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+                    HourlyEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+                    HourlyEntry.COLUMN_CONDITIONS + " INTEGER NOT NULL, " +
+                    " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                    LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));";
+
+    /**
+     * How the database connection is set up.  The sync adapter writes in one long transaction
+     * while the UI, the widgets and Muzei keep reading, so by default the database runs in
+     * write-ahead-logging mode: readers see the last committed data on their own connections
+     * instead of waiting for the writer.
+     */
+    static class Tuning {
+        // Whether to use write-ahead logging instead of a rollback journal.
+        final boolean writeAheadLogging;
+        // PRAGMA synchronous.  With WAL, NORMAL only syncs at checkpoints: a crash can lose the
+        // last transactions but never corrupts the database, and we can always sync again.
+        final String synchronous;
+        // PRAGMA cache_size, in KB.  A sync touches a few hundred pages at most.
+        final int cacheSizeKb;
+        // Pages the WAL may grow to before a commit checkpoints it back into the database.
+        final int walAutoCheckpointPages;
+        // Size the WAL file is truncated to after a checkpoint, so it doesn't keep its peak size.
+        final long journalSizeLimitBytes;
+
+        Tuning(boolean writeAheadLogging, String synchronous, int cacheSizeKb,
+               int walAutoCheckpointPages, long journalSizeLimitBytes) {
+            this.writeAheadLogging = writeAheadLogging;
+            this.synchronous = synchronous;
+            this.cacheSizeKb = cacheSizeKb;
+            this.walAutoCheckpointPages = walAutoCheckpointPages;
+            this.journalSizeLimitBytes = journalSizeLimitBytes;
+        }
+    }
+
+    static final Tuning DEFAULT_TUNING = new Tuning(true, "NORMAL", 512, 256, 512 * 1024);
+
+    private final Tuning mTuning;
+
     public WeatherDbHelper(Context context) {
+        this(context, DEFAULT_TUNING);
+    }
+
+    WeatherDbHelper(Context context, Tuning tuning) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mTuning = tuning;
+        setWriteAheadLoggingEnabled(tuning.writeAheadLogging);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // These apply to the primary connection, which runs every write and transaction.  WAL
+        // readers get their own connections with SQLite's defaults.
+        pragma(db, "synchronous = " + mTuning.synchronous);
+        // A negative cache_size is in KB rather than pages.
+        pragma(db, "cache_size = -" + mTuning.cacheSizeKb);
+        if (mTuning.writeAheadLogging) {
+            pragma(db, "wal_autocheckpoint = " + mTuning.walAutoCheckpointPages);
+        }
+        pragma(db, "journal_size_limit = " + mTuning.journalSizeLimitBytes);
+    }
+
+    // Some pragmas answer with their new value, which execSQL() refuses, so go through a query.
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
@@ -81,18 +183,67 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
+    }
+
+    /**
+     * One schema change, taking the database from toVersion - 1 to toVersion.
+     */
+    static abstract class Migration {
+        final int toVersion;
+
+        Migration(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
     }
 
+    // Ordered by toVersion, with one step for every version after OLDEST_MIGRATABLE_VERSION.
+    private static final Migration[] MIGRATIONS = {
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            },
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_HOURLY_TABLE);
+                }
+            }
+    };
+
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        // SQLiteOpenHelper runs this inside a transaction, so a failing step leaves the database
+        // at oldVersion.
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            recreate(sqLiteDatabase);
+            return;
+        }
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion > oldVersion && migration.toVersion <= newVersion) {
+                migration.migrate(sqLiteDatabase);
+            }
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // We can't know what a newer schema looks like.  The database is only a cache for online
+        // data, so discard it and start over rather than refusing to open.
+        recreate(sqLiteDatabase);
+    }
+
+    private void recreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -17,12 +17,25 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,10 +43,16 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Change notifications held back until the batch or call running on this thread finishes,
+    // or null when notifications go out straight away.
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<Set<Uri>>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int HOURLY = 400;
+    static final int HOURLY_WITH_LOCATION_AND_RANGE = 401;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -52,22 +71,53 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //date = ? AND location_id = ?
+    private static final String sDateAndLocationIdSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //_id >= ? AND _id < ?
+    private static final String sHourlyKeyRangeSelection =
+            WeatherContract.HourlyEntry._ID + " >= ? AND " +
+                    WeatherContract.HourlyEntry._ID + " < ? ";
+
+    private static final String SQL_INSERT_HOURLY =
+            "INSERT INTO " + WeatherContract.HourlyEntry.TABLE_NAME + " (" +
+                    WeatherContract.HourlyEntry._ID + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_TIME + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_TEMP + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.HourlyEntry.COLUMN_CONDITIONS +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Builds the SQL of a weather/location join query without running it.  TestDb uses this to
+     * check the query plans of the provider's selections.
+     */
+    static String buildWeatherByLocationSettingQuery(
+            String[] projection, String selection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection, selection, null, null, sortOrder, null);
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -108,6 +158,31 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getHourlyByLocationSettingAndRange(
+            Uri uri, String[] projection, String sortOrder) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = queryLocationId(db,
+                WeatherContract.HourlyEntry.getLocationSettingFromUri(uri));
+        long startTime = WeatherContract.HourlyEntry.getStartTimeFromUri(uri);
+        long endTime = WeatherContract.HourlyEntry.getEndTimeFromUri(uri);
+
+        // The rows are keyed by location and time, so the range is a seek and a scan over the
+        // table's own b-tree, already in time order.  An unknown location matches nothing.
+        String[] selectionArgs = locationId == -1
+                ? new String[]{"0", "0"}
+                : new String[]{
+                        Long.toString(WeatherContract.HourlyEntry.buildKey(locationId, startTime)),
+                        Long.toString(WeatherContract.HourlyEntry.buildKey(locationId, endTime))};
+        return db.query(WeatherContract.HourlyEntry.TABLE_NAME,
+                projection,
+                sHourlyKeyRangeSelection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder == null ? WeatherContract.HourlyEntry._ID + " ASC" : sortOrder
+        );
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +205,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*/#/#",
+                HOURLY_WITH_LOCATION_AND_RANGE);
         return matcher;
     }
 
@@ -164,6 +243,9 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HOURLY:
+            case HOURLY_WITH_LOCATION_AND_RANGE:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,10 +295,33 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "hourly/*/#/#"
+            case HOURLY_WITH_LOCATION_AND_RANGE: {
+                retCursor = getHourlyByLocationSettingAndRange(uri, projection, sortOrder);
+                break;
+            }
+            // "hourly"
+            case HOURLY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        if (WeatherContract.isCompactUri(uri) && retCursor.getCount() <= CompactCursor.MAX_ROWS) {
+            Cursor sqliteCursor = retCursor;
+            retCursor = new CompactCursor(sqliteCursor);
+            sqliteCursor.close();
+        }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
         return retCursor;
     }
@@ -241,6 +346,13 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                if (WeatherContract.isUpsertUri(uri)) {
+                    long existingId = queryLocationId(db, values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                    if (existingId != -1) {
+                        return WeatherContract.LocationEntry.buildLocationUri(existingId);
+                    }
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -248,13 +360,50 @@ public class WeatherProvider extends ContentProvider {
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case HOURLY: {
+                putHourlyKey(values);
+                long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = WeatherContract.HourlyEntry.buildHourlyUri(_id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
+    private static void putHourlyKey(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY);
+        Long time = values.getAsLong(WeatherContract.HourlyEntry.COLUMN_TIME);
+        if (locationId == null || time == null) {
+            throw new IllegalArgumentException("Hourly rows need a location and a time");
+        }
+        values.put(WeatherContract.HourlyEntry._ID,
+                WeatherContract.HourlyEntry.buildKey(locationId, time));
+    }
+
+    /**
+     * @return the _ID of the location row with the given setting, or -1 if there is none
+     */
+    private static long queryLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -271,16 +420,88 @@ public class WeatherProvider extends ContentProvider {
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case HOURLY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    // Every write funnels through here, so that the cached ForecastSnapshot can never outlive
+    // the data it was built from.
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            addPendingNotification(pending, uri);
+            return;
+        }
+        ForecastSnapshot.invalidate();
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Holds back change notifications on this thread until {@link #sendPendingNotifications()}.
+     *
+     * @return true if this call started deferring, false if an enclosing batch already did and
+     * will send the notifications itself
+     */
+    private boolean deferNotifications() {
+        if (mPendingNotifications.get() != null) {
+            return false;
+        }
+        mPendingNotifications.set(new LinkedHashSet<Uri>());
+        return true;
+    }
+
+    private void sendPendingNotifications() {
+        Set<Uri> pending = mPendingNotifications.get();
+        mPendingNotifications.remove();
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        ForecastSnapshot.invalidate();
+        for (Uri uri : pending) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    // For writes that were rolled back: nothing changed, so nobody needs to hear about it.
+    private void discardPendingNotifications() {
+        mPendingNotifications.remove();
+    }
+
+    // A notification for a URI also reaches the observers of everything below it, so only keep
+    // the outermost of the pending URIs.
+    private static void addPendingNotification(Set<Uri> pending, Uri uri) {
+        for (Iterator<Uri> it = pending.iterator(); it.hasNext(); ) {
+            Uri other = it.next();
+            if (isSameOrAncestor(other, uri)) {
+                return;
+            }
+            if (isSameOrAncestor(uri, other)) {
+                it.remove();
+            }
+        }
+        pending.add(uri);
+    }
+
+    private static boolean isSameOrAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() <= segments.size()
+                && ancestorSegments.equals(segments.subList(0, ancestorSegments.size()));
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -299,6 +520,11 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
+                if (WeatherContract.isUpsertUri(uri)) {
+                    rowsUpdated = upsertWeatherRow(db, values) == WeatherContract.ROW_UNCHANGED
+                            ? 0 : 1;
+                    break;
+                }
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
@@ -310,7 +536,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,6 +547,14 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                if (WeatherContract.isUpsertUri(uri)) {
+                    // For upserts we return the number of rows that were inserted or updated.
+                    int changedCount = upsertWeather(db, values, new int[values.length]);
+                    if (changedCount > 0) {
+                        notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                    }
+                    return changedCount;
+                }
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
@@ -335,13 +569,252 @@ public class WeatherProvider extends ContentProvider {
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
                 return returnCount;
+            case HOURLY:
+                int insertedCount = insertHourly(db, values);
+                if (insertedCount > 0) {
+                    notifyChange(uri);
+                }
+                return insertedCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in a single transaction, so a batch is atomic and costs one journal
+     * commit rather than one per operation.  The transaction is only committed early at
+     * operations built with withYieldAllowed(true), and only if another thread is waiting for
+     * the database.
+     *
+     * Change notifications are held back and deduplicated until the whole batch is done, so
+     * that observers such as the forecast list's loader reload once per batch rather than once
+     * per operation.  They are only sent once the batch committed; a batch that rolled back
+     * changed nothing, unless it yielded, which committed the operations before the yield.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean deferred = deferNotifications();
+        boolean committed = false;
+        boolean yielded = false;
+        try {
+            ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < results.length; i++) {
+                    ContentProviderOperation operation = operations.get(i);
+                    if (i > 0 && operation.isYieldAllowed()) {
+                        yielded |= db.yieldIfContendedSafely();
+                    }
+                    results[i] = operation.apply(this, results, i);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            committed = true;
+            return results;
+        } finally {
+            if (deferred) {
+                if (committed || yielded) {
+                    sendPendingNotifications();
+                } else {
+                    discardPendingNotifications();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        // A call can write more than once, for instance an upsert followed by a purge, but its
+        // observers only need to hear about it once.
+        boolean deferred = deferNotifications();
+        try {
+            return callDeferred(method, arg, extras);
+        } finally {
+            if (deferred) {
+                sendPendingNotifications();
+            }
+        }
+    }
+
+    private Bundle callDeferred(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_UPSERT_WEATHER.equals(method)) {
+            Parcelable[] parcelables = extras.getParcelableArray(WeatherContract.EXTRA_VALUES);
+            ContentValues[] values = new ContentValues[parcelables.length];
+            for (int i = 0; i < parcelables.length; i++) {
+                values[i] = (ContentValues) parcelables[i];
+            }
+            int[] rowChanges = new int[values.length];
+            int changedCount = upsertWeather(mOpenHelper.getWritableDatabase(), values, rowChanges);
+            if (changedCount > 0) {
+                notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            }
+            Bundle result = new Bundle();
+            result.putIntArray(WeatherContract.EXTRA_ROW_CHANGES, rowChanges);
+            result.putInt(WeatherContract.EXTRA_CHANGED_COUNT, changedCount);
+            return result;
+        } else if (WeatherContract.METHOD_INSERT_WEATHER_ROWS.equals(method)) {
+            WeatherRows rows = WeatherRows.fromBundle(extras);
+            int insertedCount = new WeatherRowWriter().insert(
+                    mOpenHelper.getWritableDatabase(), rows);
+            if (insertedCount > 0) {
+                notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            }
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_CHANGED_COUNT, insertedCount);
+            return result;
+        } else if (WeatherContract.METHOD_UPSERT_WEATHER_ROWS.equals(method)) {
+            WeatherRows rows = WeatherRows.fromBundle(extras);
+            int[] rowChanges = new int[rows.size()];
+            int changedCount = new WeatherRowWriter().upsert(
+                    mOpenHelper.getWritableDatabase(), rows, rowChanges);
+            if (changedCount > 0) {
+                notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+            }
+            Bundle result = new Bundle();
+            result.putIntArray(WeatherContract.EXTRA_ROW_CHANGES, rowChanges);
+            result.putInt(WeatherContract.EXTRA_CHANGED_COUNT, changedCount);
+            if (extras.containsKey(WeatherContract.EXTRA_PURGE_BEFORE)) {
+                long purgeBefore = extras.getLong(WeatherContract.EXTRA_PURGE_BEFORE);
+                result.putInt(WeatherContract.EXTRA_PURGED_COUNT, delete(
+                        WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(purgeBefore)}));
+            }
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Inserts hourly rows through one compiled statement in one transaction.  There are ten
+     * times as many of these as there are days, so this skips SQLiteDatabase.insert's per-row
+     * SQL building.  Rows for an existing location and time replace the stored ones.
+     *
+     * @return the number of rows inserted
+     */
+    private static int insertHourly(SQLiteDatabase db, ContentValues[] values) {
+        int insertedCount = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_HOURLY);
+        try {
+            for (ContentValues value : values) {
+                putHourlyKey(value);
+                insert.clearBindings();
+                insert.bindLong(1, value.getAsLong(WeatherContract.HourlyEntry._ID));
+                insert.bindLong(2, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY));
+                insert.bindLong(3, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_TIME));
+                insert.bindLong(4, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_TEMP));
+                insert.bindLong(5,
+                        value.getAsLong(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED));
+                insert.bindLong(6, value.getAsLong(WeatherContract.HourlyEntry.COLUMN_PRESSURE));
+                insert.bindLong(7,
+                        value.getAsLong(WeatherContract.HourlyEntry.COLUMN_CONDITIONS));
+                if (insert.executeInsert() != -1) {
+                    insertedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        return insertedCount;
+    }
+
+    /**
+     * Writes each weather row only if it is new or differs from the stored row for the same
+     * date and location.  Changed rows are updated in place, so they keep their _ID instead of
+     * going through the table's ON CONFLICT REPLACE delete and re-insert.
+     *
+     * @param rowChanges receives a WeatherContract.ROW_* code for each row
+     * @return the number of rows that were inserted or updated
+     */
+    private int upsertWeather(SQLiteDatabase db, ContentValues[] values, int[] rowChanges) {
+        int changedCount = 0;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                normalizeDate(values[i]);
+                rowChanges[i] = upsertWeatherRow(db, values[i]);
+                if (rowChanges[i] != WeatherContract.ROW_UNCHANGED) {
+                    changedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return changedCount;
+    }
+
+    private int upsertWeatherRow(SQLiteDatabase db, ContentValues value) {
+        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        if (date == null || locationId == null) {
+            throw new IllegalArgumentException("Weather upserts need a date and a location");
+        }
+        Cursor existing = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null,
+                sDateAndLocationIdSelection,
+                new String[]{Long.toString(date), Long.toString(locationId)},
+                null,
+                null,
+                null);
+        try {
+            if (!existing.moveToFirst()) {
+                if (db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value) == -1) {
+                    throw new android.database.SQLException("Failed to upsert weather row");
+                }
+                return WeatherContract.ROW_INSERTED;
+            }
+            if (matchesCurrentRow(existing, value)) {
+                return WeatherContract.ROW_UNCHANGED;
+            }
+            long id = existing.getLong(
+                    existing.getColumnIndex(WeatherContract.WeatherEntry._ID));
+            db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                    WeatherContract.WeatherEntry._ID + " = ?", new String[]{Long.toString(id)});
+            return WeatherContract.ROW_UPDATED;
+        } finally {
+            existing.close();
+        }
+    }
+
+    /**
+     * @return true if every value matches the corresponding column of the cursor's current row
+     */
+    private static boolean matchesCurrentRow(Cursor cursor, ContentValues values) {
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            int idx = cursor.getColumnIndex(entry.getKey());
+            if (idx == -1) {
+                return false;
+            }
+            Object value = entry.getValue();
+            if (value == null) {
+                if (!cursor.isNull(idx)) {
+                    return false;
+                }
+            } else if (value instanceof Double || value instanceof Float) {
+                if (Double.compare(cursor.getDouble(idx), ((Number) value).doubleValue()) != 0) {
+                    return false;
+                }
+            } else if (value instanceof Number) {
+                if (cursor.getLong(idx) != ((Number) value).longValue()) {
+                    return false;
+                }
+            } else if (!value.toString().equals(cursor.getString(idx))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.format.Time;
+import android.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Writes {@link WeatherRows} into the weather table through compiled statements.
+ *
+ * Each write compiles its INSERT (and UPDATE) once and rebinds it for every row inside a single
+ * transaction, binding primitives straight from the row arrays.  Compared to
+ * SQLiteDatabase.insert with ContentValues this avoids rebuilding the SQL and boxing every
+ * column per row, which is what dominates long backfills.
+ */
+class WeatherRowWriter {
+
+    // The weather table's UNIQUE (date, location_id) ON CONFLICT REPLACE clause still applies.
+    private static final String SQL_INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Same bind order as SQL_INSERT, with the row's _id taking the place of the key columns.
+    private static final String SQL_UPDATE = "UPDATE " + WeatherEntry.TABLE_NAME + " SET " +
+            WeatherEntry.COLUMN_WEATHER_ID + " = ?, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " = ?, " +
+            WeatherEntry.COLUMN_MIN_TEMP + " = ?, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " = ?, " +
+            WeatherEntry.COLUMN_HUMIDITY + " = ?, " +
+            WeatherEntry.COLUMN_PRESSURE + " = ?, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " = ?, " +
+            WeatherEntry.COLUMN_DEGREES + " = ? " +
+            "WHERE " + WeatherEntry._ID + " = ?";
+
+    private static final String[] STORED_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_LOC_KEY = 1;
+    private static final int INDEX_DATE = 2;
+    private static final int INDEX_WEATHER_ID = 3;
+    private static final int INDEX_SHORT_DESC = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+    private static final int INDEX_MAX_TEMP = 6;
+    private static final int INDEX_HUMIDITY = 7;
+    private static final int INDEX_PRESSURE = 8;
+    private static final int INDEX_WIND_SPEED = 9;
+    private static final int INDEX_DEGREES = 10;
+
+    // Reused for date normalization, which would otherwise allocate a Time per row.
+    private final Time mTime = new Time();
+
+    /**
+     * Inserts every row, replacing any stored row for the same date and location.
+     *
+     * @return the number of rows inserted
+     */
+    int insert(SQLiteDatabase db, WeatherRows rows) {
+        int insertedCount = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                if (executeInsert(insert, rows, i) != -1) {
+                    insertedCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        return insertedCount;
+    }
+
+    /**
+     * Writes only the rows that are new or differ from the stored row for the same date and
+     * location.  Changed rows are updated in place and keep their _ID.
+     *
+     * @param rowChanges receives a WeatherContract.ROW_* code for each row
+     * @return the number of rows that were inserted or updated
+     */
+    int upsert(SQLiteDatabase db, WeatherRows rows, int[] rowChanges) {
+        int size = rows.size();
+        if (size == 0) {
+            return 0;
+        }
+        int changedCount = 0;
+        db.beginTransaction();
+        SQLiteStatement insert = null;
+        SQLiteStatement update = null;
+        Cursor stored = null;
+        try {
+            // Read the stored rows covering the batch's date range in one query, and index them
+            // by location and date.
+            long minDate = Long.MAX_VALUE;
+            long maxDate = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                long date = normalizeDate(rows.getDate(i));
+                minDate = Math.min(minDate, date);
+                maxDate = Math.max(maxDate, date);
+            }
+            stored = db.query(WeatherEntry.TABLE_NAME,
+                    STORED_COLUMNS,
+                    WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[]{Long.toString(minDate), Long.toString(maxDate)},
+                    null,
+                    null,
+                    null);
+            LongSparseArray<LongSparseArray<Integer>> storedPositions =
+                    new LongSparseArray<LongSparseArray<Integer>>();
+            while (stored.moveToNext()) {
+                long locationId = stored.getLong(INDEX_LOC_KEY);
+                LongSparseArray<Integer> byDate = storedPositions.get(locationId);
+                if (byDate == null) {
+                    byDate = new LongSparseArray<Integer>();
+                    storedPositions.put(locationId, byDate);
+                }
+                byDate.put(stored.getLong(INDEX_DATE), stored.getPosition());
+            }
+
+            for (int i = 0; i < size; i++) {
+                LongSparseArray<Integer> byDate = storedPositions.get(rows.getLocationId(i));
+                Integer position = byDate == null ? null
+                        : byDate.get(normalizeDate(rows.getDate(i)));
+                if (position == null) {
+                    if (insert == null) {
+                        insert = db.compileStatement(SQL_INSERT);
+                    }
+                    if (executeInsert(insert, rows, i) == -1) {
+                        throw new android.database.SQLException("Failed to upsert weather row");
+                    }
+                    rowChanges[i] = WeatherContract.ROW_INSERTED;
+                    changedCount++;
+                } else {
+                    stored.moveToPosition(position);
+                    if (matchesCurrentRow(stored, rows, i)) {
+                        rowChanges[i] = WeatherContract.ROW_UNCHANGED;
+                    } else {
+                        if (update == null) {
+                            update = db.compileStatement(SQL_UPDATE);
+                        }
+                        bindValues(update, rows, i, 1);
+                        update.bindLong(9, stored.getLong(INDEX_ID));
+                        update.executeUpdateDelete();
+                        rowChanges[i] = WeatherContract.ROW_UPDATED;
+                        changedCount++;
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (stored != null) {
+                stored.close();
+            }
+            if (insert != null) {
+                insert.close();
+            }
+            if (update != null) {
+                update.close();
+            }
+            db.endTransaction();
+        }
+        return changedCount;
+    }
+
+    private long executeInsert(SQLiteStatement insert, WeatherRows rows, int i) {
+        insert.bindLong(1, rows.getLocationId(i));
+        insert.bindLong(2, normalizeDate(rows.getDate(i)));
+        bindValues(insert, rows, i, 3);
+        return insert.executeInsert();
+    }
+
+    // Binds the non-key columns, in the order shared by SQL_INSERT and SQL_UPDATE.
+    private static void bindValues(SQLiteStatement statement, WeatherRows rows, int i, int first) {
+        statement.bindLong(first, rows.getWeatherId(i));
+        statement.bindString(first + 1, rows.getShortDesc(i));
+        statement.bindDouble(first + 2, rows.getMinTemp(i));
+        statement.bindDouble(first + 3, rows.getMaxTemp(i));
+        statement.bindDouble(first + 4, rows.getHumidity(i));
+        statement.bindDouble(first + 5, rows.getPressure(i));
+        statement.bindDouble(first + 6, rows.getWindSpeed(i));
+        statement.bindDouble(first + 7, rows.getDegrees(i));
+    }
+
+    private static boolean matchesCurrentRow(Cursor stored, WeatherRows rows, int i) {
+        return stored.getInt(INDEX_WEATHER_ID) == rows.getWeatherId(i)
+                && rows.getShortDesc(i).equals(stored.getString(INDEX_SHORT_DESC))
+                && Double.compare(stored.getDouble(INDEX_MIN_TEMP), rows.getMinTemp(i)) == 0
+                && Double.compare(stored.getDouble(INDEX_MAX_TEMP), rows.getMaxTemp(i)) == 0
+                && Double.compare(stored.getDouble(INDEX_HUMIDITY), rows.getHumidity(i)) == 0
+                && Double.compare(stored.getDouble(INDEX_PRESSURE), rows.getPressure(i)) == 0
+                && Double.compare(stored.getDouble(INDEX_WIND_SPEED), rows.getWindSpeed(i)) == 0
+                && Double.compare(stored.getDouble(INDEX_DEGREES), rows.getDegrees(i)) == 0;
+    }
+
+    // Same normalization as WeatherContract.normalizeDate, without the per-call Time.
+    private long normalizeDate(long date) {
+        mTime.set(date);
+        int julianDay = Time.getJulianDay(date, mTime.gmtoff);
+        return mTime.setJulianDay(julianDay);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * A growable batch of weather rows held column by column in primitive arrays.
+ *
+ * This is the ContentValues-free way of handing weather rows to the provider: nothing is boxed
+ * per column, and the whole batch travels as a handful of arrays inside one Bundle (see
+ * {@link WeatherContract#METHOD_INSERT_WEATHER_ROWS}).
+ */
+public class WeatherRows {
+
+    private static final String KEY_LOCATION_IDS = "location_ids";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_WEATHER_IDS = "weather_ids";
+    private static final String KEY_SHORT_DESCS = "short_descs";
+    private static final String KEY_MIN_TEMPS = "min_temps";
+    private static final String KEY_MAX_TEMPS = "max_temps";
+    private static final String KEY_HUMIDITIES = "humidities";
+    private static final String KEY_PRESSURES = "pressures";
+    private static final String KEY_WIND_SPEEDS = "wind_speeds";
+    private static final String KEY_DEGREES = "degrees";
+
+    private int mSize;
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mShortDescs;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public WeatherRows(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mShortDescs = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    public void add(long locationId, long date, int weatherId, String shortDesc,
+                    double minTemp, double maxTemp, double humidity, double pressure,
+                    double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mLocationIds[mSize] = locationId;
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mShortDescs[mSize] = shortDesc;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(mDates.length * 2, 16);
+        mLocationIds = Arrays.copyOf(mLocationIds, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId(int i) {
+        return mLocationIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(KEY_LOCATION_IDS, Arrays.copyOf(mLocationIds, mSize));
+        bundle.putLongArray(KEY_DATES, Arrays.copyOf(mDates, mSize));
+        bundle.putIntArray(KEY_WEATHER_IDS, Arrays.copyOf(mWeatherIds, mSize));
+        bundle.putStringArray(KEY_SHORT_DESCS, Arrays.copyOf(mShortDescs, mSize));
+        bundle.putDoubleArray(KEY_MIN_TEMPS, Arrays.copyOf(mMinTemps, mSize));
+        bundle.putDoubleArray(KEY_MAX_TEMPS, Arrays.copyOf(mMaxTemps, mSize));
+        bundle.putDoubleArray(KEY_HUMIDITIES, Arrays.copyOf(mHumidities, mSize));
+        bundle.putDoubleArray(KEY_PRESSURES, Arrays.copyOf(mPressures, mSize));
+        bundle.putDoubleArray(KEY_WIND_SPEEDS, Arrays.copyOf(mWindSpeeds, mSize));
+        bundle.putDoubleArray(KEY_DEGREES, Arrays.copyOf(mDegrees, mSize));
+        return bundle;
+    }
+
+    public static WeatherRows fromBundle(Bundle bundle) {
+        WeatherRows rows = new WeatherRows(0);
+        rows.mLocationIds = bundle.getLongArray(KEY_LOCATION_IDS);
+        rows.mDates = bundle.getLongArray(KEY_DATES);
+        rows.mWeatherIds = bundle.getIntArray(KEY_WEATHER_IDS);
+        rows.mShortDescs = bundle.getStringArray(KEY_SHORT_DESCS);
+        rows.mMinTemps = bundle.getDoubleArray(KEY_MIN_TEMPS);
+        rows.mMaxTemps = bundle.getDoubleArray(KEY_MAX_TEMPS);
+        rows.mHumidities = bundle.getDoubleArray(KEY_HUMIDITIES);
+        rows.mPressures = bundle.getDoubleArray(KEY_PRESSURES);
+        rows.mWindSpeeds = bundle.getDoubleArray(KEY_WIND_SPEEDS);
+        rows.mDegrees = bundle.getDoubleArray(KEY_DEGREES);
+        if (rows.mDates == null) {
+            throw new IllegalArgumentException("Bundle does not hold weather rows");
+        }
+        rows.mSize = rows.mDates.length;
+        return rows;
+    }
+}
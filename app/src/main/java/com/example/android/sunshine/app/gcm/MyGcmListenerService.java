@@ -29,6 +29,8 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.ForecastDelta;
+import com.example.android.sunshine.app.sync.SyncScheduler;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -62,6 +64,10 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
+                // Forecast deltas are stored straight away, no notification needed.
+                if (ForecastDelta.onMessageReceived(this, data)) {
+                    return;
+                }
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
@@ -70,6 +76,11 @@ public class MyGcmListenerService extends GcmListenerService {
                     String alert =
                             String.format(getString(R.string.gcm_weather_alert), weather, location);
                     sendNotification(alert);
+
+                    // The weather is on the move, so check back sooner than usual for a while.
+                    SyncScheduler scheduler = new SyncScheduler(this);
+                    scheduler.recordPush(System.currentTimeMillis());
+                    scheduler.reschedule(this);
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -0,0 +1,215 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * A forecast update pushed over GCM: only the days of one location that changed since the
+ * server last sent them, so the app can store them without fetching the whole forecast.
+ *
+ * The message's {@link #EXTRA_FORECAST_DELTA} holds JSON small enough for a GCM payload:
+ *
+ * <pre>
+ * {"location": "94043",
+ *  "days": [[date, weather id, "short description", max, min,
+ *            humidity, pressure, wind speed, wind direction], ...]}
+ * </pre>
+ *
+ * where dates are in milliseconds since the epoch and temperatures in Celsius, like the
+ * columns they go into.  A delta that can't be applied as is falls back to a full sync.
+ */
+public class ForecastDelta {
+
+    private static final String LOG_TAG = ForecastDelta.class.getSimpleName();
+
+    public static final String EXTRA_FORECAST_DELTA = "forecast_delta";
+
+    static final String KEY_LOCATION = "location";
+    static final String KEY_DAYS = "days";
+
+    // Positions in each day's array.
+    static final int DAY_DATE = 0;
+    static final int DAY_WEATHER_ID = 1;
+    static final int DAY_SHORT_DESC = 2;
+    static final int DAY_MAX_TEMP = 3;
+    static final int DAY_MIN_TEMP = 4;
+    static final int DAY_HUMIDITY = 5;
+    static final int DAY_PRESSURE = 6;
+    static final int DAY_WIND_SPEED = 7;
+    static final int DAY_DEGREES = 8;
+    private static final int DAY_FIELDS = 9;
+
+    public final String locationSetting;
+    // One set of weather columns per day, without the location key.
+    final ContentValues[] days;
+
+    private ForecastDelta(String locationSetting, ContentValues[] days) {
+        this.locationSetting = locationSetting;
+        this.days = days;
+    }
+
+    /**
+     * Handles a GCM message if it carries a delta: applies it, or requests a full sync if it
+     * can't be applied.
+     *
+     * @return false if the message holds no delta, and is left for the caller to handle
+     */
+    public static boolean onMessageReceived(Context context, Bundle data) {
+        String json = data.getString(EXTRA_FORECAST_DELTA);
+        if (json == null) {
+            return false;
+        }
+        boolean applied = false;
+        try {
+            applied = parse(json).apply(context);
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Ignoring a malformed forecast delta", e);
+        }
+        if (!applied) {
+            SunshineSyncAdapter.syncImmediately(context);
+        }
+        return true;
+    }
+
+    /**
+     * @throws JSONException if the delta is malformed or a day is missing any of its fields
+     */
+    static ForecastDelta parse(String json) throws JSONException {
+        JSONObject delta = new JSONObject(json);
+        String locationSetting = delta.getString(KEY_LOCATION);
+        JSONArray days = delta.getJSONArray(KEY_DAYS);
+        ContentValues[] values = new ContentValues[days.length()];
+        for (int i = 0; i < values.length; i++) {
+            JSONArray day = days.getJSONArray(i);
+            if (day.length() != DAY_FIELDS) {
+                throw new JSONException("Day " + i + " has " + day.length() + " fields");
+            }
+            ContentValues dayValues = new ContentValues();
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(day.getLong(DAY_DATE)));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    day.getInt(DAY_WEATHER_ID));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    day.getString(DAY_SHORT_DESC));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                    day.getDouble(DAY_MAX_TEMP));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                    day.getDouble(DAY_MIN_TEMP));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    day.getDouble(DAY_HUMIDITY));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    day.getDouble(DAY_PRESSURE));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    day.getDouble(DAY_WIND_SPEED));
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    day.getDouble(DAY_DEGREES));
+            values[i] = dayValues;
+        }
+        return new ForecastDelta(locationSetting, values);
+    }
+
+    /**
+     * Upserts the changed days in one batch, and refreshes the widgets, Muzei and the startup
+     * snapshot if any row moved.  Then offers the stored forecast to the wearable the way a sync
+     * does, which blocks, so this must not run on the main thread.  The delta only makes sense
+     * on top of a forecast we already have, so it is refused for a location with nothing stored
+     * from today onwards.  Days that are already over are skipped, the next sync would only
+     * purge them again.
+     *
+     * @return false if the delta could not be applied and a full sync is needed
+     */
+    boolean apply(Context context) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long locationId = queryLocationIdWithForecast(context, today);
+        if (locationId < 0) {
+            Log.d(LOG_TAG, "No forecast to apply the delta for " + locationSetting + " to");
+            return false;
+        }
+
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        for (ContentValues day : days) {
+            if (day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE) < today) {
+                continue;
+            }
+            operations.add(ContentProviderOperation
+                    .newUpdate(WeatherContract.WeatherEntry.buildWeatherUpsertUri())
+                    .withValues(day)
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId)
+                    .build());
+        }
+        if (operations.isEmpty()) {
+            return true;
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = context.getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Could not apply the forecast delta", e);
+            return false;
+        }
+
+        int changedCount = 0;
+        for (ContentProviderResult result : results) {
+            if (result.count != null) {
+                changedCount += result.count;
+            }
+        }
+        if (changedCount > 0) {
+            SunshineSyncAdapter.updateWidgets(context);
+            SunshineSyncAdapter.updateMuzei(context);
+            ForecastSnapshotFile.write(context, ForecastSnapshot.get(context));
+        }
+        // Only connects if the wearable doesn't have this forecast yet.
+        SunshineSyncAdapter.updateWearable(context, new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build());
+        new SyncScheduler(context).recordDelta(System.currentTimeMillis());
+        Log.d(LOG_TAG, "Applied a pushed delta, " + changedCount + " of " + operations.size()
+                + " days changed for " + locationSetting);
+        return true;
+    }
+
+    /**
+     * @return the location's row id, or -1 if it is unknown or has no forecast from the given
+     * date onwards
+     */
+    private long queryLocationIdWithForecast(Context context, long today) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, today),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
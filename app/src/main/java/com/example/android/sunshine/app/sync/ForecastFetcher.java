@@ -0,0 +1,300 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Downloads and parses the forecast for one location.
+ *
+ * A fetch never throws and never touches the database.  It hands back a {@link Result} telling
+ * the sync adapter whether there is anything to store, so several locations can be fetched in
+ * parallel and then written together.
+ */
+public class ForecastFetcher {
+
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    public static final String DEFAULT_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    // The 3-hourly forecast for the next five days, which takes the same parameters except for
+    // the number of days.
+    public static final String DEFAULT_HOURLY_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast?";
+
+    private static final String ZIP_PARAM = "zip";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    static final int NUM_DAYS = 14;
+
+    /**
+     * A location to fetch.  Latitude and longitude, when set, take precedence over the location
+     * setting, which is then only used to file the forecast under.
+     */
+    public static class Request {
+        public final String locationSetting;
+        public final String latitude;
+        public final String longitude;
+
+        // Whether to send the cached validators.  Only ask the server whether the forecast
+        // changed if we still have it, otherwise a 304 would leave us with nothing to show.
+        public boolean conditional;
+
+        public Request(String locationSetting) {
+            this(locationSetting, null, null);
+        }
+
+        public Request(String locationSetting, String latitude, String longitude) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    public static class Result {
+        // A new forecast was parsed and needs storing.
+        public static final int STATUS_FETCHED = 0;
+        // The server answered our conditional request with 304 Not Modified.
+        public static final int STATUS_NOT_MODIFIED = 1;
+        // The server sent the same payload we already stored today.
+        public static final int STATUS_UNCHANGED = 2;
+        // The forecast could not be downloaded.
+        public static final int STATUS_IO_ERROR = 3;
+        // The server sent something that is not a forecast.
+        public static final int STATUS_INVALID = 4;
+
+        public final Request request;
+        public final String cacheKey;
+        public int status;
+        public ForecastJsonParser.Forecast forecast;
+        // Set instead of the forecast by fetchHourly().
+        public HourlyForecastJsonParser.HourlyForecast hourly;
+        public String payloadHash;
+        public String eTag;
+        public long lastModified;
+        // The HTTP status the server answered with, or 0 if it never answered.
+        public int responseCode;
+        // How many times the forecast was requested, see RetryPolicy.
+        public int attempts = 1;
+
+        // Where the time went, for SyncMetrics: waiting for the response headers, blocked
+        // reading the body, and parsing it in between reads.
+        public long connectNanos;
+        public long readNanos;
+        public long parseNanos;
+        // Size of the body as it came off the connection.
+        public long bytes;
+
+        Result(Request request, String cacheKey) {
+            this.request = request;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    private final ForecastHttpCache mHttpCache;
+    private final String mBaseUrl;
+    private final String mHourlyBaseUrl;
+
+    public ForecastFetcher(ForecastHttpCache httpCache) {
+        this(httpCache, DEFAULT_BASE_URL, DEFAULT_HOURLY_BASE_URL);
+    }
+
+    /**
+     * @param baseUrl the forecast endpoint, for pointing the fetcher at a test server
+     * @param hourlyBaseUrl the 3-hourly forecast endpoint
+     */
+    public ForecastFetcher(ForecastHttpCache httpCache, String baseUrl, String hourlyBaseUrl) {
+        mHttpCache = httpCache;
+        mBaseUrl = baseUrl;
+        mHourlyBaseUrl = hourlyBaseUrl;
+    }
+
+    public Uri buildUri(Request request) {
+        return buildUri(mBaseUrl, request).buildUpon()
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .build();
+    }
+
+    public Uri buildHourlyUri(Request request) {
+        return buildUri(mHourlyBaseUrl, request);
+    }
+
+    private static Uri buildUri(String baseUrl, Request request) {
+        Uri.Builder uriBuilder = Uri.parse(baseUrl).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (request.latitude != null && request.longitude != null) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, request.latitude)
+                    .appendQueryParameter(LON_PARAM, request.longitude);
+        } else {
+            uriBuilder.appendQueryParameter(ZIP_PARAM, request.locationSetting);
+        }
+
+        return uriBuilder.appendQueryParameter(FORMAT_PARAM, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+    }
+
+    public Result fetch(Request request) {
+        return fetch(request, buildUri(request), false);
+    }
+
+    /**
+     * Downloads and parses the 3-hourly forecast into {@link Result#hourly}.  It is validated
+     * and hashed like the daily forecast, so a sync that finds it unchanged stores nothing.
+     */
+    public Result fetchHourly(Request request) {
+        return fetch(request, buildHourlyUri(request), true);
+    }
+
+    private Result fetch(Request request, Uri builtUri, boolean hourly) {
+        Result result = new Result(request, builtUri.toString());
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        MeteredInputStream meteredStream = null;
+        long startNanos = System.nanoTime();
+        long bodyStartNanos = 0;
+
+        try {
+            Log.v(LOG_TAG, "URL = " + builtUri.toString());
+            URL url = new URL(builtUri.toString());
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            if (request.conditional) {
+                mHttpCache.addValidators(urlConnection, result.cacheKey);
+            } else {
+                mHttpCache.invalidate(result.cacheKey);
+            }
+            urlConnection.connect();
+            result.responseCode = urlConnection.getResponseCode();
+            bodyStartNanos = System.nanoTime();
+            result.connectNanos = bodyStartNanos - startNanos;
+
+            if (result.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                result.status = Result.STATUS_NOT_MODIFIED;
+                return result;
+            }
+
+            // Parse the forecast straight off the wire.  We never hold the raw response, only
+            // the rows we are going to store.
+            inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                result.status = Result.STATUS_IO_ERROR;
+                return result;
+            }
+            meteredStream = new MeteredInputStream(inputStream);
+            MessageDigest payloadDigest = ForecastHttpCache.newPayloadDigest();
+            InputStream payload =
+                    new DigestInputStream(new BufferedInputStream(meteredStream), payloadDigest);
+            boolean ok;
+            if (hourly) {
+                result.hourly = HourlyForecastJsonParser.parse(payload);
+                ok = result.hourly.isOk();
+            } else {
+                result.forecast = ForecastJsonParser.parse(payload);
+                ok = result.forecast.isOk();
+            }
+            result.payloadHash = ForecastHttpCache.toHexString(payloadDigest.digest());
+
+            if (ok && mHttpCache.isPayloadUnchanged(result.cacheKey, result.payloadHash)) {
+                result.status = Result.STATUS_UNCHANGED;
+                return result;
+            }
+            // Keep the validators, the connection is long gone by the time the forecast has
+            // been stored and they can be cached.
+            result.eTag = urlConnection.getHeaderField(ForecastHttpCache.HEADER_ETAG);
+            result.lastModified = urlConnection.getLastModified();
+            result.status = Result.STATUS_FETCHED;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            result.status = Result.STATUS_IO_ERROR;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = Result.STATUS_INVALID;
+        } finally {
+            if (meteredStream != null) {
+                result.bytes = meteredStream.bytes;
+                result.readNanos = meteredStream.readNanos;
+                result.parseNanos = System.nanoTime() - bodyStartNanos - meteredStream.readNanos;
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the bytes read through it and the time spent blocked in reads, which tells the
+     * network apart from the parser pulling on it.
+     */
+    private static class MeteredInputStream extends FilterInputStream {
+        long bytes;
+        long readNanos;
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            readNanos += System.nanoTime() - start;
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.format.Time;
+
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Remembers, per forecast request, the HTTP validators the server handed out and a hash of the
+ * last payload we stored, so that a sync can skip parsing, writing and fanning out a forecast
+ * that has not changed.
+ *
+ * Two levels of hits are possible: the server answers our conditional request with a
+ * 304 Not Modified, or it sends the full body again but its hash matches the one we already
+ * stored today.  Either way the sync adapter has nothing to do.  Hit and miss totals are kept
+ * so that the effectiveness of the cache can be checked on real devices.
+ */
+public class ForecastHttpCache {
+
+    private static final String PREFS_NAME = "forecast_http_cache";
+
+    private static final String KEY_ETAG_SUFFIX = ".etag";
+    private static final String KEY_LAST_MODIFIED_SUFFIX = ".last_modified";
+    private static final String KEY_PAYLOAD_HASH_SUFFIX = ".payload_hash";
+    private static final String KEY_PAYLOAD_DAY_SUFFIX = ".payload_day";
+
+    private static final String KEY_HIT_COUNT = "hit_count";
+    private static final String KEY_MISS_COUNT = "miss_count";
+
+    static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String DIGEST_ALGORITHM = "MD5";
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastHttpCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Turns the request into a conditional one if we have validators for it.  Must be called
+     * before the connection is opened.
+     *
+     * @param cacheKey identifies the request, typically its URL
+     */
+    public void addValidators(HttpURLConnection urlConnection, String cacheKey) {
+        String eTag = mPrefs.getString(cacheKey + KEY_ETAG_SUFFIX, null);
+        if (eTag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, eTag);
+        }
+        long lastModified = mPrefs.getLong(cacheKey + KEY_LAST_MODIFIED_SUFFIX, 0);
+        if (lastModified != 0) {
+            urlConnection.setIfModifiedSince(lastModified);
+        }
+    }
+
+    /**
+     * @return true if the payload with the given hash was already stored today.  Day boundaries
+     * matter because the sync adapter derives each row's date from the day the sync runs on.
+     */
+    public boolean isPayloadUnchanged(String cacheKey, String payloadHash) {
+        return payloadHash.equals(mPrefs.getString(cacheKey + KEY_PAYLOAD_HASH_SUFFIX, null))
+                && getCurrentJulianDay() == mPrefs.getInt(cacheKey + KEY_PAYLOAD_DAY_SUFFIX, -1);
+    }
+
+    /**
+     * Records the validators of a response and the hash of its payload.  Only call this once
+     * the payload has been successfully stored, otherwise a later hit would skip data that
+     * never made it to the database.
+     *
+     * @param eTag the response's ETag header, or null
+     * @param lastModified the response's Last-Modified date, or 0
+     */
+    public void store(String cacheKey, String eTag, long lastModified, String payloadHash) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (eTag != null) {
+            editor.putString(cacheKey + KEY_ETAG_SUFFIX, eTag);
+        } else {
+            editor.remove(cacheKey + KEY_ETAG_SUFFIX);
+        }
+        if (lastModified != 0) {
+            editor.putLong(cacheKey + KEY_LAST_MODIFIED_SUFFIX, lastModified);
+        } else {
+            editor.remove(cacheKey + KEY_LAST_MODIFIED_SUFFIX);
+        }
+        editor.putString(cacheKey + KEY_PAYLOAD_HASH_SUFFIX, payloadHash);
+        editor.putInt(cacheKey + KEY_PAYLOAD_DAY_SUFFIX, getCurrentJulianDay());
+        editor.apply();
+    }
+
+    /**
+     * Forgets everything known about a request, so that the next sync fetches and stores it
+     * unconditionally.
+     */
+    public void invalidate(String cacheKey) {
+        mPrefs.edit()
+                .remove(cacheKey + KEY_ETAG_SUFFIX)
+                .remove(cacheKey + KEY_LAST_MODIFIED_SUFFIX)
+                .remove(cacheKey + KEY_PAYLOAD_HASH_SUFFIX)
+                .remove(cacheKey + KEY_PAYLOAD_DAY_SUFFIX)
+                .apply();
+    }
+
+    public void recordHit() {
+        mPrefs.edit().putInt(KEY_HIT_COUNT, getHitCount() + 1).apply();
+    }
+
+    public void recordMiss() {
+        mPrefs.edit().putInt(KEY_MISS_COUNT, getMissCount() + 1).apply();
+    }
+
+    public int getHitCount() {
+        return mPrefs.getInt(KEY_HIT_COUNT, 0);
+    }
+
+    public int getMissCount() {
+        return mPrefs.getInt(KEY_MISS_COUNT, 0);
+    }
+
+    /**
+     * @return a digest to feed the response body through while it is being parsed
+     */
+    public static MessageDigest newPayloadDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release ships MD5.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHexString(byte[] digest) {
+        StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static int getCurrentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+/**
+ * Streams the OpenWeatherMap 3-hourly forecast response into an {@link HourlyForecast}.
+ *
+ * Works like {@link ForecastJsonParser#parse(InputStream)}, except that the periods go straight
+ * into primitive arrays: a response holds about forty of them, and we don't want an object per
+ * period on the way to the database.
+ */
+public class HourlyForecastJsonParser {
+
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Each period's forecast is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+    private static final String OWM_TIME = "dt";
+
+    // Temperature, pressure and humidity are children of the "main" object.
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+
+    // Wind speed and direction are children of the "wind" object.
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * The parsed response: the city the server resolved the query to, plus one entry per
+     * forecast period in each of the arrays, in server (time) order.
+     */
+    public static class HourlyForecast {
+        public int messageCode = HttpURLConnection.HTTP_OK;
+        public String cityName;
+        public double cityLatitude;
+        public double cityLongitude;
+
+        private int mSize;
+        // In seconds since the epoch.
+        long[] times = new long[40];
+        double[] temperatures = new double[40];
+        double[] pressures = new double[40];
+        int[] humidities = new int[40];
+        double[] windSpeeds = new double[40];
+        double[] windDirections = new double[40];
+        int[] weatherIds = new int[40];
+
+        public boolean isOk() {
+            return messageCode == HttpURLConnection.HTTP_OK;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public long getTime(int i) {
+            return times[i];
+        }
+
+        public double getTemperature(int i) {
+            return temperatures[i];
+        }
+
+        public double getPressure(int i) {
+            return pressures[i];
+        }
+
+        public int getHumidity(int i) {
+            return humidities[i];
+        }
+
+        public double getWindSpeed(int i) {
+            return windSpeeds[i];
+        }
+
+        public double getWindDirection(int i) {
+            return windDirections[i];
+        }
+
+        public int getWeatherId(int i) {
+            return weatherIds[i];
+        }
+
+        // Makes room for one more period and returns its index.
+        private int append() {
+            if (mSize == times.length) {
+                int capacity = mSize * 2;
+                times = Arrays.copyOf(times, capacity);
+                temperatures = Arrays.copyOf(temperatures, capacity);
+                pressures = Arrays.copyOf(pressures, capacity);
+                humidities = Arrays.copyOf(humidities, capacity);
+                windSpeeds = Arrays.copyOf(windSpeeds, capacity);
+                windDirections = Arrays.copyOf(windDirections, capacity);
+                weatherIds = Arrays.copyOf(weatherIds, capacity);
+            }
+            return mSize++;
+        }
+    }
+
+    /**
+     * Streams the forecast out of the given InputStream.  The stream is consumed but not closed.
+     *
+     * @throws JSONException if the payload is not a well-formed forecast
+     * @throws IOException if reading from the stream fails
+     */
+    public static HourlyForecast parse(InputStream in) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            HourlyForecast forecast = new HourlyForecast();
+            boolean hasCity = false;
+            boolean hasList = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.messageCode = reader.nextInt();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                    hasCity = true;
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readPeriod(reader, forecast);
+                    }
+                    reader.endArray();
+                    hasList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (forecast.isOk() && !(hasCity && hasList)) {
+                throw new JSONException("Forecast is missing the city or the list of periods");
+            }
+            return forecast;
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+    }
+
+    private static void readCity(JsonReader reader, HourlyForecast forecast)
+            throws IOException, JSONException {
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                hasCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (forecast.cityName == null || !hasCoord) {
+            throw new JSONException("City is missing its name or coordinates");
+        }
+    }
+
+    private static void readPeriod(JsonReader reader, HourlyForecast forecast)
+            throws IOException, JSONException {
+        int i = forecast.append();
+        boolean hasTime = false;
+        boolean hasMain = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_TIME.equals(name)) {
+                forecast.times[i] = reader.nextLong();
+                hasTime = true;
+            } else if (OWM_MAIN.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String mainName = reader.nextName();
+                    if (OWM_TEMPERATURE.equals(mainName)) {
+                        forecast.temperatures[i] = reader.nextDouble();
+                        hasMain = true;
+                    } else if (OWM_PRESSURE.equals(mainName)) {
+                        forecast.pressures[i] = reader.nextDouble();
+                    } else if (OWM_HUMIDITY.equals(mainName)) {
+                        forecast.humidities[i] = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WIND.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WINDSPEED.equals(windName)) {
+                        forecast.windSpeeds[i] = reader.nextDouble();
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        forecast.windDirections[i] = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Like the daily forecast, "weather" is a 1 element array.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            forecast.weatherIds[i] = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!hasTime || !hasMain) {
+            throw new JSONException("Forecast period is missing its time or temperature");
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/**
+ * Decides how hard a sync tries when the weather server misbehaves.
+ *
+ * Within one sync, a download that failed in a way that may go away by itself (no response or
+ * only part of it, a 5xx or 429, or a body that didn't parse) is tried again up to
+ * {@link #MAX_ATTEMPTS} times.  The delay before each retry doubles from
+ * {@link #BASE_DELAY_MILLIS} up to {@link #MAX_DELAY_MILLIS}, and is jittered: half of it is
+ * fixed and the other half random, so that devices which lost the server together don't come
+ * back in lockstep.
+ *
+ * Across syncs, a circuit breaker counts the syncs in a row where the server itself failed every
+ * download.  After {@link #FAILURE_THRESHOLD} of them the circuit opens, and periodic syncs
+ * stay away from the server for a cooldown that doubles with every trip, up to
+ * {@link #MAX_COOLDOWN_MILLIS}.  The first sync after the cooldown is let through; if it
+ * succeeds the circuit closes again, otherwise it reopens.  Plain connectivity failures are left
+ * to the sync framework's own backoff and don't count.
+ */
+public class RetryPolicy {
+
+    private static final String LOG_TAG = RetryPolicy.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_retry_policy";
+
+    private static final String KEY_CONSECUTIVE_FAILURES = "consecutive_failures";
+    private static final String KEY_TRIPS = "trips";
+    private static final String KEY_OPEN_UNTIL = "open_until";
+
+    static final int MAX_ATTEMPTS = 3;
+    static final long BASE_DELAY_MILLIS = 2 * 1000;
+    static final long MAX_DELAY_MILLIS = 30 * 1000;
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long BASE_COOLDOWN_MILLIS = 15 * 60 * 1000;
+    static final long MAX_COOLDOWN_MILLIS = 6 * 60 * 60 * 1000;
+
+    // Too Many Requests, which HttpURLConnection has no constant for.
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final SharedPreferences mPrefs;
+    private final Random mRandom;
+    private final long mBaseDelayMillis;
+
+    public RetryPolicy(Context context) {
+        this(context, BASE_DELAY_MILLIS, new Random());
+    }
+
+    /**
+     * @param baseDelayMillis the delay before the first retry, for tests that can't wait
+     */
+    RetryPolicy(Context context, long baseDelayMillis, Random random) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mBaseDelayMillis = baseDelayMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Fetches the forecast, retrying transient failures with backoff.  Gives up early, with the
+     * last failed result, if the sync is cancelled while waiting.
+     */
+    public ForecastFetcher.Result fetch(ForecastFetcher fetcher, ForecastFetcher.Request request) {
+        return fetch(fetcher, request, false);
+    }
+
+    /**
+     * Fetches the 3-hourly forecast, retrying like {@link #fetch}.
+     */
+    public ForecastFetcher.Result fetchHourly(ForecastFetcher fetcher,
+                                              ForecastFetcher.Request request) {
+        return fetch(fetcher, request, true);
+    }
+
+    private ForecastFetcher.Result fetch(ForecastFetcher fetcher,
+                                         ForecastFetcher.Request request, boolean hourly) {
+        ForecastFetcher.Result result = hourly ? fetcher.fetchHourly(request)
+                : fetcher.fetch(request);
+        int attempts = 1;
+        while (attempts < MAX_ATTEMPTS && isRetryable(result)) {
+            long delay = getRetryDelayMillis(attempts);
+            Log.d(LOG_TAG, "Retrying " + request.locationSetting + " in " + delay + "ms after "
+                    + SyncMetrics.getStatusName(result.status) + " " + result.responseCode);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result = hourly ? fetcher.fetchHourly(request) : fetcher.fetch(request);
+            attempts++;
+        }
+        result.attempts = attempts;
+        return result;
+    }
+
+    /**
+     * @return true if trying again may succeed
+     */
+    static boolean isRetryable(ForecastFetcher.Result result) {
+        switch (result.status) {
+            case ForecastFetcher.Result.STATUS_INVALID:
+                return true;
+            case ForecastFetcher.Result.STATUS_IO_ERROR:
+                // No response, a connection dropped halfway through the body, or a struggling
+                // server.  A client error other than Too Many Requests will only happen again.
+                return result.responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                        || result.responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                        || result.responseCode == HTTP_TOO_MANY_REQUESTS;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the failure was the server's doing rather than the network's
+     */
+    static boolean isServerError(ForecastFetcher.Result result) {
+        return result.status == ForecastFetcher.Result.STATUS_INVALID
+                || (result.status == ForecastFetcher.Result.STATUS_IO_ERROR
+                && result.responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR);
+    }
+
+    /**
+     * @param retry 1 for the first retry
+     */
+    long getRetryDelayMillis(int retry) {
+        return jitter(Math.min(MAX_DELAY_MILLIS, mBaseDelayMillis << (retry - 1)));
+    }
+
+    // Half the delay, plus a random part of the other half.
+    private long jitter(long delayMillis) {
+        long half = delayMillis / 2;
+        return half + (long) (mRandom.nextDouble() * (delayMillis - half));
+    }
+
+    /**
+     * @return true if periodic syncs should leave the server alone for now
+     */
+    public boolean isCircuitOpen(long now) {
+        return now < mPrefs.getLong(KEY_OPEN_UNTIL, 0);
+    }
+
+    /**
+     * @return how long until the circuit lets a sync through, in seconds, for
+     * SyncResult.delayUntil
+     */
+    public long getSecondsUntilClosed(long now) {
+        return Math.max(0, (mPrefs.getLong(KEY_OPEN_UNTIL, 0) - now + 999) / 1000);
+    }
+
+    /**
+     * Feeds the outcome of a sync's downloads to the circuit breaker.
+     *
+     * @return true if this opened the circuit
+     */
+    public boolean recordSyncOutcome(Iterable<ForecastFetcher.Result> results, long now) {
+        boolean anySucceeded = false;
+        boolean allServerErrors = true;
+        for (ForecastFetcher.Result result : results) {
+            switch (result.status) {
+                case ForecastFetcher.Result.STATUS_FETCHED:
+                case ForecastFetcher.Result.STATUS_NOT_MODIFIED:
+                case ForecastFetcher.Result.STATUS_UNCHANGED:
+                    anySucceeded = true;
+                    break;
+            }
+            allServerErrors &= isServerError(result);
+        }
+
+        if (anySucceeded) {
+            mPrefs.edit()
+                    .remove(KEY_CONSECUTIVE_FAILURES)
+                    .remove(KEY_TRIPS)
+                    .remove(KEY_OPEN_UNTIL)
+                    .apply();
+            return false;
+        }
+        if (!allServerErrors) {
+            // The network let us down, not the server.
+            return false;
+        }
+
+        int failures = mPrefs.getInt(KEY_CONSECUTIVE_FAILURES, 0) + 1;
+        SharedPreferences.Editor editor = mPrefs.edit()
+                .putInt(KEY_CONSECUTIVE_FAILURES, failures);
+        boolean opened = failures >= FAILURE_THRESHOLD;
+        if (opened) {
+            // Reopening after a failed trial sync doubles the cooldown.
+            int trips = mPrefs.getInt(KEY_TRIPS, 0) + 1;
+            long cooldown = jitter(Math.min(MAX_COOLDOWN_MILLIS,
+                    BASE_COOLDOWN_MILLIS << Math.min(trips - 1, 16)));
+            editor.putInt(KEY_TRIPS, trips)
+                    .putLong(KEY_OPEN_UNTIL, now + cooldown);
+            Log.w(LOG_TAG, "Server failed " + failures + " syncs in a row, pausing for "
+                    + cooldown / 1000 + "s");
+        }
+        editor.apply();
+        return opened;
+    }
+}
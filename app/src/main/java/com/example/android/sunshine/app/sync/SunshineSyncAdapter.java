@@ -7,11 +7,13 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -19,9 +21,10 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -33,38 +36,28 @@ import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StartupTrace;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
-        DataApi.DataListener,
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
@@ -75,55 +68,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // Upper bound on concurrent forecast downloads when several locations are saved.
+    private static final int MAX_PARALLEL_FETCHES = 3;
+    // Length of one period of the 3-hourly forecast.
+    private static final long HOURLY_PERIOD_SECONDS = 3 * 60 * 60;
 
+    // Set while a bootstrap thread is running, so that a second launch doesn't start another.
+    private static final AtomicBoolean sBootstrapping = new AtomicBoolean();
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
-
-    private static final String WEARABLE_WEATHER_DATA_PATH = "/weather_data_path_wearable";
-    private static final String WEARABLE_WEATHER_ID_KEY = "weather_id_key_wearable";
-    private static final String WEARABLE_HIGH_TEMP_KEY = "high_temp_key_wearable";
-    private static final String WEARABLE_LOW_TEMP_KEY = "low_temp_key_wearable";
-
-    private static final int INVALID_WEATHER_ID = 2000;
-    private static final double INVALID_TEMP = 1000;
-
+    // Only connected while a push is handing a forecast over to the wearable.
     private GoogleApiClient mGoogleApiClient;
-    int todayWeatherId = INVALID_WEATHER_ID;
-    double todayHighTemp = INVALID_TEMP, todayLowTemp = INVALID_TEMP;
-
-    @Override
-    public void onConnected(Bundle bundle) {
-        Log.v(LOG_TAG, "onConnected(): Successfully connected to Google API client");
-        Wearable.DataApi.addListener(mGoogleApiClient, this);
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.v(LOG_TAG, "onConnectionSuspended(): Connection to Google API client was suspended");
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        Log.e(LOG_TAG, "onConnectionFailed(): Failed to connect, with result: \" + result");
-        Wearable.DataApi.removeListener(mGoogleApiClient, this);
-    }
-
-    @Override
-    public void onDataChanged(DataEventBuffer dataEventBuffer) {
-        Log.v(LOG_TAG, "onDataChanged(): " + dataEventBuffer);
-    }
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -139,358 +93,497 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         super(context, autoInitialize);
         mGoogleApiClient = new GoogleApiClient.Builder(context)
                 .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
                 .build();
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "SUNSHINE WEATHER Starting sync");
+        Context context = getContext();
+        SyncMetrics.Recorder metrics = new SyncMetrics.Recorder();
+
+        // While the server keeps failing, periodic syncs stay away from it.  One the user asked
+        // for, say by changing the location, still goes through.
+        RetryPolicy retryPolicy = new RetryPolicy(context);
+        long now = System.currentTimeMillis();
+        if (retryPolicy.isCircuitOpen(now)
+                && !extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)) {
+            syncResult.delayUntil = retryPolicy.getSecondsUntilClosed(now);
+            Log.d(LOG_TAG, "Server is failing, next sync in " + syncResult.delayUntil + "s");
+            metrics.recordFailure("skipped, circuit open");
+            new SyncMetrics(context).save(metrics);
+            return;
+        }
 
-        // Connect GoogleApiCLient
-            mGoogleApiClient.connect();
-
+        metrics.beginStage(SyncMetrics.STAGE_PREPARE);
         // We no longer need just the location String, but also potentially the latitude and
         // longitude, in case we are syncing based on a new Place Picker API result.
-        Context context = getContext();
         String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        // The preferred location always comes first, followed by the saved locations, which are
+        // fetched in the same pass so that switching to one of them needs no round-trip.
+        List<ForecastFetcher.Request> requests = new ArrayList<ForecastFetcher.Request>();
+        if (Utility.isLocationLatLonAvailable(context)) {
+            requests.add(new ForecastFetcher.Request(locationQuery,
+                    String.valueOf(Utility.getLocationLatitude(context)),
+                    String.valueOf(Utility.getLocationLongitude(context))));
+        } else {
+            requests.add(new ForecastFetcher.Request(locationQuery));
+        }
+        for (String savedLocation : Utility.getSavedLocations(context)) {
+            requests.add(new ForecastFetcher.Request(savedLocation));
+        }
+        for (ForecastFetcher.Request request : requests) {
+            request.conditional = hasForecastForToday(request.locationSetting);
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        ForecastHttpCache httpCache = new ForecastHttpCache(context);
+        SyncScheduler scheduler = new SyncScheduler(context);
+        ForecastFetcher fetcher = new ForecastFetcher(httpCache);
+        metrics.endStage(SyncMetrics.STAGE_PREPARE);
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        metrics.beginStage(SyncMetrics.STAGE_FETCH);
+        List<ForecastFetcher.Result> results = fetchForecasts(fetcher, retryPolicy, requests);
+        metrics.endStage(SyncMetrics.STAGE_FETCH);
+        for (ForecastFetcher.Result result : results) {
+            metrics.recordFetch(result);
+        }
+        if (retryPolicy.recordSyncOutcome(results, System.currentTimeMillis())) {
+            syncResult.delayUntil = retryPolicy.getSecondsUntilClosed(System.currentTimeMillis());
+        }
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String ZIP_PARAM = "zip";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(ZIP_PARAM, locationQuery);
-            }
+        ForecastFetcher.Result preferred = results.get(0);
+        switch (preferred.status) {
+            case ForecastFetcher.Result.STATUS_IO_ERROR:
+                // If the code didn't successfully get the weather data, there's no point in
+                // attempting to parse it.
+                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                break;
+            case ForecastFetcher.Result.STATUS_INVALID:
+                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+                break;
+            case ForecastFetcher.Result.STATUS_FETCHED:
+                setLocationStatus(getContext(), getLocationStatus(preferred.forecast));
+                break;
+            default:
+                setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
 
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            Log.v(LOG_TAG, "URL = " + builtUri.toString());
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+        List<ForecastFetcher.Result> fetched = new ArrayList<ForecastFetcher.Result>();
+        for (ForecastFetcher.Result result : results) {
+            switch (result.status) {
+                case ForecastFetcher.Result.STATUS_NOT_MODIFIED:
+                case ForecastFetcher.Result.STATUS_UNCHANGED:
+                    httpCache.recordHit();
+                    scheduler.recordForecastChange(result.request.locationSetting, 0, 1);
+                    break;
+                case ForecastFetcher.Result.STATUS_FETCHED:
+                    httpCache.recordMiss();
+                    if (result.forecast.isOk()) {
+                        fetched.add(result);
+                    }
+                    break;
+                case ForecastFetcher.Result.STATUS_INVALID:
+                    // Tells the framework not to retry before the next periodic sync.
+                    syncResult.stats.numParseExceptions++;
+                    Log.w(LOG_TAG, "Invalid forecast for " + result.request.locationSetting);
+                    break;
+                default:
+                    // Tells the framework to retry soon, with its own backoff.
+                    syncResult.stats.numIoExceptions++;
+                    Log.w(LOG_TAG, "Could not fetch " + result.request.locationSetting);
             }
+        }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+        // The intraday detail is only kept for the preferred location, and is not worth asking
+        // for if the server could not even send the daily forecast.  Like the daily forecast, it
+        // is only stored again when it changed.
+        ForecastFetcher.Result hourlyResult = null;
+        HourlyForecastJsonParser.HourlyForecast hourly = null;
+        if (preferred.status != ForecastFetcher.Result.STATUS_IO_ERROR
+                && preferred.status != ForecastFetcher.Result.STATUS_INVALID) {
+            ForecastFetcher.Request hourlyRequest = new ForecastFetcher.Request(
+                    preferred.request.locationSetting, preferred.request.latitude,
+                    preferred.request.longitude);
+            hourlyRequest.conditional = hasCurrentHourlyForecast(hourlyRequest.locationSetting);
+            metrics.beginStage(SyncMetrics.STAGE_HOURLY);
+            hourlyResult = retryPolicy.fetchHourly(fetcher, hourlyRequest);
+            metrics.endStage(SyncMetrics.STAGE_HOURLY);
+            switch (hourlyResult.status) {
+                case ForecastFetcher.Result.STATUS_FETCHED:
+                    if (hourlyResult.hourly.isOk()) {
+                        hourly = hourlyResult.hourly;
+                    } else {
+                        metrics.recordFailure("hourly forecast");
+                    }
+                    break;
+                case ForecastFetcher.Result.STATUS_NOT_MODIFIED:
+                case ForecastFetcher.Result.STATUS_UNCHANGED:
+                    break;
+                default:
+                    metrics.recordFailure("hourly forecast");
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-            Wearable.DataApi.removeListener(mGoogleApiClient, this);
-            mGoogleApiClient.disconnect();
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-            Wearable.DataApi.removeListener(mGoogleApiClient, this);
-            mGoogleApiClient.disconnect();
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+        }
+
+        if (storeForecasts(fetched, preferred, hourly, scheduler, metrics, syncResult)) {
+            for (ForecastFetcher.Result result : fetched) {
+                httpCache.store(result.cacheKey, result.eTag, result.lastModified,
+                        result.payloadHash);
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            if (hourly != null) {
+                httpCache.store(hourlyResult.cacheKey, hourlyResult.eTag,
+                        hourlyResult.lastModified, hourlyResult.payloadHash);
             }
         }
-        return;
+
+        // Offered after every sync that reached the server, not just the ones that changed a row,
+        // so that a push that failed last time goes out now.  The channel skips it if the
+        // wearable already has this forecast.  Covers connecting and handing the data item
+        // over, the wearable receives it later.
+        if (preferred.status != ForecastFetcher.Result.STATUS_IO_ERROR
+                && preferred.status != ForecastFetcher.Result.STATUS_INVALID) {
+            metrics.beginStage(SyncMetrics.STAGE_WEARABLE);
+            updateWearable(context, mGoogleApiClient);
+            metrics.endStage(SyncMetrics.STAGE_WEARABLE);
+        }
+
+        // Pick when the next sync runs from what this one found.
+        metrics.beginStage(SyncMetrics.STAGE_RESCHEDULE);
+        scheduler.reschedule(context);
+        metrics.endStage(SyncMetrics.STAGE_RESCHEDULE);
+
+        new SyncMetrics(context).save(metrics);
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Runs the fetches on at most MAX_PARALLEL_FETCHES threads and waits for all of them.  Each
+     * retries on its own thread, so one location's backoff doesn't hold up the others.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return one result per request, in request order
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
+    private List<ForecastFetcher.Result> fetchForecasts(final ForecastFetcher fetcher,
+                                                        final RetryPolicy retryPolicy,
+                                                        List<ForecastFetcher.Request> requests) {
+        List<ForecastFetcher.Result> results =
+                new ArrayList<ForecastFetcher.Result>(requests.size());
+        if (requests.size() == 1) {
+            // Nothing to overlap, so don't bother with threads.
+            results.add(retryPolicy.fetch(fetcher, requests.get(0)));
+            return results;
+        }
 
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(requests.size(), MAX_PARALLEL_FETCHES));
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+            List<Future<ForecastFetcher.Result>> futures =
+                    new ArrayList<Future<ForecastFetcher.Result>>(requests.size());
+            for (final ForecastFetcher.Request request : requests) {
+                futures.add(executor.submit(new Callable<ForecastFetcher.Result>() {
+                    @Override
+                    public ForecastFetcher.Result call() {
+                        return retryPolicy.fetch(fetcher, request);
+                    }
+                }));
             }
+            for (Future<ForecastFetcher.Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Whatever was not fetched yet counts as failed.
+            Thread.currentThread().interrupt();
+            while (results.size() < requests.size()) {
+                ForecastFetcher.Result failed = new ForecastFetcher.Result(
+                        requests.get(results.size()), null);
+                failed.status = ForecastFetcher.Result.STATUS_IO_ERROR;
+                results.add(failed);
+            }
+        } catch (ExecutionException e) {
+            // fetch() reports its errors in the result, so this is a bug.
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+    @LocationStatus
+    private static int getLocationStatus(ForecastJsonParser.Forecast forecast) {
+        switch (forecast.messageCode) {
+            case HttpURLConnection.HTTP_OK:
+                return LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+    /**
+     * Stores the parsed forecasts in one atomic provider batch: resolves their location rows,
+     * upserts one weather row per day for all of them, replaces the preferred location's
+     * 3-hourly forecast and purges old days and periods.  Then lets the widgets, Muzei and the
+     * notification know.
+     *
+     * @param preferred the result for the preferred location, which the 3-hourly forecast is for
+     * @param hourly the preferred location's 3-hourly forecast, or null if it wasn't fetched
+     * @param metrics times each step, and counts the rows written
+     * @param syncResult gets the row counts, or the database error
+     * @return true if the forecasts were stored
+     */
+    private boolean storeForecasts(List<ForecastFetcher.Result> fetched,
+                                   ForecastFetcher.Result preferred,
+                                   HourlyForecastJsonParser.HourlyForecast hourly,
+                                   SyncScheduler scheduler,
+                                   SyncMetrics.Recorder metrics,
+                                   SyncResult syncResult) {
+        if (fetched.isEmpty() && hourly == null) {
+            Log.d(LOG_TAG, "Sync Complete. No forecast changed");
+            return false;
+        }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        // now we work exclusively in UTC
+        dayTime = new Time();
 
-                double high;
-                double low;
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        int[] locationOperations = new int[fetched.size()];
+        for (int l = 0; l < fetched.size(); l++) {
+            ForecastFetcher.Result result = fetched.get(l);
+            ForecastJsonParser.Forecast forecast = result.forecast;
 
-                String description;
-                int weatherId;
+            // The location row is looked up or inserted first, and each day refers back to it.
+            int locationOperation = operations.size();
+            locationOperations[l] = locationOperation;
+            operations.add(buildLocationUpsert(result.request.locationSetting, forecast.cityName,
+                    forecast.cityLatitude, forecast.cityLongitude));
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+            int numDays = forecast.days.size();
+            for (int i = 0; i < numDays; i++) {
+                ForecastJsonParser.Day day = forecast.days.get(i);
 
                 // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                // update wearable values
-                if (i == 0) {
-                    todayWeatherId = weatherId;
-                    todayHighTemp = high;
-                    todayLowTemp = low;
-                }
-
+                long dateTime = dayTime.setJulianDay(julianStartDay + i);
 
                 ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, day.humidity);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, day.pressure);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, day.windSpeed);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, day.windDirection);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.high);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.low);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, day.description);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, day.weatherId);
+
+                // Upserted through an update so that the result counts whether the day changed.
+                operations.add(ContentProviderOperation
+                        .newUpdate(WeatherContract.WeatherEntry.buildWeatherUpsertUri())
+                        .withValues(weatherValues)
+                        .withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                                locationOperation)
+                        .build());
             }
+        }
+        int dayCount = operations.size() - fetched.size();
+
+        // delete old data so we don't build up an endless history
+        int purgeOperation = operations.size();
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay))})
+                .build());
+
+        if (hourly != null) {
+            addHourlyOperations(operations, preferred.request.locationSetting, hourly);
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+        // The provider applies the whole batch in one transaction and sends one change
+        // notification, so the UI never sees the new days without the old ones purged, and the
+        // forecast list reloads once per sync.
+        ContentProviderResult[] results;
+        metrics.beginStage(SyncMetrics.STAGE_STORE);
+        try {
+            results = getContext().getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Could not store the forecasts", e);
+            metrics.recordFailure("store: " + e);
+            syncResult.databaseError = true;
+            return false;
+        } finally {
+            metrics.endStage(SyncMetrics.STAGE_STORE);
+        }
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+        // Only writing the days that actually changed.
+        int changedCount = 0;
+        for (int i = 0; i < purgeOperation; i++) {
+            if (results[i].count != null) {
+                changedCount += results[i].count;
+            }
+        }
+        int deletedCount = results[purgeOperation].count;
+        metrics.count(SyncMetrics.COUNTER_ROWS_WRITTEN, dayCount);
+        metrics.count(SyncMetrics.COUNTER_ROWS_CHANGED, changedCount);
+        metrics.count(SyncMetrics.COUNTER_ROWS_DELETED, deletedCount);
+        syncResult.stats.numEntries += dayCount;
+        syncResult.stats.numUpdates += changedCount;
+        syncResult.stats.numDeletes += deletedCount;
+
+        // Each location's days follow its upsert.
+        for (int l = 0; l < fetched.size(); l++) {
+            int end = l + 1 < fetched.size() ? locationOperations[l + 1] : purgeOperation;
+            int locationChanged = 0;
+            for (int i = locationOperations[l] + 1; i < end; i++) {
+                if (results[i].count != null) {
+                    locationChanged += results[i].count;
+                }
+            }
+            scheduler.recordForecastChange(fetched.get(l).request.locationSetting,
+                    locationChanged, end - locationOperations[l] - 1);
+        }
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                updateWearable();
+        // Nothing the widgets or Muzei show can have moved if no row did.
+        if (changedCount > 0 || deletedCount > 0) {
+            metrics.beginStage(SyncMetrics.STAGE_WIDGETS);
+            updateWidgets(getContext());
+            metrics.endStage(SyncMetrics.STAGE_WIDGETS);
+            metrics.beginStage(SyncMetrics.STAGE_MUZEI);
+            updateMuzei(getContext());
+            metrics.endStage(SyncMetrics.STAGE_MUZEI);
+        }
+        metrics.beginStage(SyncMetrics.STAGE_NOTIFICATION);
+        notifyWeather();
+        metrics.endStage(SyncMetrics.STAGE_NOTIFICATION);
+        // Refresh what ForecastFragment shows while its loader starts up on the next launch.
+        metrics.beginStage(SyncMetrics.STAGE_SNAPSHOT);
+        ForecastSnapshotFile.write(getContext(), ForecastSnapshot.get(getContext()));
+        metrics.endStage(SyncMetrics.STAGE_SNAPSHOT);
+        Log.d(LOG_TAG, "Sync Complete. " + changedCount + " of " + dayCount + " days changed in "
+                + fetched.size() + " locations");
+        return true;
+    }
 
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-            Wearable.DataApi.removeListener(mGoogleApiClient, this);
-            mGoogleApiClient.disconnect();
+    /**
+     * Adds the operations replacing a location's 3-hourly forecast to the batch: the location
+     * upsert, one insert per period, and the purge of periods that are over.
+     */
+    private static void addHourlyOperations(ArrayList<ContentProviderOperation> operations,
+                                            String locationSetting,
+                                            HourlyForecastJsonParser.HourlyForecast hourly) {
+        int locationOperation = operations.size();
+        operations.add(buildLocationUpsert(locationSetting, hourly.cityName,
+                hourly.cityLatitude, hourly.cityLongitude));
+
+        for (int i = 0; i < hourly.size(); i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.HourlyEntry.CONTENT_URI)
+                    .withValue(WeatherContract.HourlyEntry.COLUMN_TIME, hourly.getTime(i))
+                    .withValue(WeatherContract.HourlyEntry.COLUMN_TEMP,
+                            WeatherContract.HourlyEntry.toScaled(hourly.getTemperature(i)))
+                    .withValue(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+                            WeatherContract.HourlyEntry.toScaled(hourly.getWindSpeed(i)))
+                    .withValue(WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+                            WeatherContract.HourlyEntry.toScaled(hourly.getPressure(i)))
+                    .withValue(WeatherContract.HourlyEntry.COLUMN_CONDITIONS,
+                            WeatherContract.HourlyEntry.packConditions(hourly.getWeatherId(i),
+                                    hourly.getHumidity(i), hourly.getWindDirection(i)))
+                    .withValueBackReference(WeatherContract.HourlyEntry.COLUMN_LOC_KEY,
+                            locationOperation)
+                    .build());
         }
+
+        // Keep the period we are in, which started up to three hours ago.
+        long periodStart = System.currentTimeMillis() / 1000 - HOURLY_PERIOD_SECONDS;
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.HourlyEntry.CONTENT_URI)
+                .withSelection(WeatherContract.HourlyEntry.COLUMN_TIME + " < ?",
+                        new String[]{Long.toString(periodStart)})
+                .build());
     }
 
-    private void updateWearable() {
-        // pushing data to wearable
-        Log.v(LOG_TAG, "SUNSHINE PUSHING DATA TO WEARABLE");
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEARABLE_WEATHER_DATA_PATH);
-        putDataMapRequest.getDataMap().putInt(WEARABLE_WEATHER_ID_KEY, todayWeatherId);
-        putDataMapRequest.getDataMap().putDouble(WEARABLE_HIGH_TEMP_KEY, todayHighTemp);
-        putDataMapRequest.getDataMap().putDouble(WEARABLE_LOW_TEMP_KEY, todayLowTemp);
-
-        PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
-        PendingResult<DataApi.DataItemResult> pendingResult = Wearable.DataApi.putDataItem(mGoogleApiClient, putDataRequest);
-        pendingResult.setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-            @Override
-            public void onResult(DataApi.DataItemResult dataItemResult) {
-                if (dataItemResult.getStatus().isSuccess()) {
-                    Log.v(LOG_TAG, "Data item set successfully with URI: " + dataItemResult.getDataItem().getUri());
-                }
-            }
-        });
+    /**
+     * @return true if the database holds a 3-hourly period for the location that isn't over
+     */
+    private boolean hasCurrentHourlyForecast(String locationSetting) {
+        long now = System.currentTimeMillis() / 1000;
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.HourlyEntry.buildHourlyLocationWithRange(locationSetting,
+                        now - HOURLY_PERIOD_SECONDS, now + HOURLY_PERIOD_SECONDS),
+                new String[]{WeatherContract.HourlyEntry.COLUMN_TIME},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
     }
 
-    private void updateWidgets() {
-        Context context = getContext();
+    /**
+     * @return true if the database still holds today's forecast for the location
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
+
+    static void updateWidgets(Context context) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
     }
 
+    /**
+     * Pushes the stored forecast for the preferred location to the wearable, if it doesn't have
+     * it yet.  Blocks, so it must not be called on the main thread.  Leaves the client
+     * disconnected.
+     */
+    static void updateWearable(Context context, GoogleApiClient googleApiClient) {
+        try {
+            new WearableChannel(context, googleApiClient).push(ForecastSnapshot.get(context));
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
@@ -506,18 +599,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                // the widgets and Muzei were just handed the same snapshot, so this is normally
+                // served from memory
+                ForecastSnapshot forecast = ForecastSnapshot.get(context);
+                int today = forecast.indexOfDate(
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
+
+                if (today >= 0) {
+                    int weatherId = forecast.getWeatherId(today);
+                    double high = forecast.getMaxTemp(today);
+                    double low = forecast.getMinTemp(today);
+                    String desc = forecast.getShortDesc(today);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -593,59 +685,29 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to build the batch operation adding a location to the weather database.
+     * The provider reuses the existing row if the location is already there.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return an insert whose result URI holds the row ID of the location.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    static ContentProviderOperation buildLocationUpsert(String locationSetting, String cityName,
+                                                        double lat, double lon) {
+        return ContentProviderOperation
+                .newInsert(WeatherContract.LocationEntry.buildLocationUpsertUri())
+                .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName)
+                .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon)
+                .build();
     }
 
     /**
@@ -737,8 +799,72 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         syncImmediately(context);
     }
 
+    /**
+     * Makes sure the sync account exists and its periodic sync is set up.  The AccountManager
+     * and ContentResolver calls this takes are binder round trips that MainActivity can't
+     * afford before its first frame, so they run on a background thread.  The account is
+     * checked on every launch, since the user can remove it from the system settings, but its
+     * sync is only set up again once per install and app version.
+     */
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        final Context appContext = context.getApplicationContext();
+        if (!sBootstrapping.compareAndSet(false, true)) {
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    bootstrapSyncAccount(appContext);
+                } finally {
+                    sBootstrapping.set(false);
+                }
+            }
+        }, "SyncBootstrap").start();
+    }
+
+    /**
+     * @return true if this version of the app has already set up its sync account
+     */
+    public static boolean isSyncAdapterInitialized(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getInt(context.getString(R.string.pref_sync_bootstrap_version_key), 0)
+                == BuildConfig.VERSION_CODE;
+    }
+
+    /**
+     * Does the work of {@link #initializeSyncAdapter(Context)} on the calling thread: recreates
+     * the account if it is gone, which also sets up its sync, and otherwise sets up the sync of
+     * an existing account once per app version.
+     */
+    static void bootstrapSyncAccount(Context context) {
+        StartupTrace.beginSpan(StartupTrace.SYNC_BOOTSTRAP);
+        try {
+            Account account = getSyncAccount(context);
+            if (account == null) {
+                // Try again on the next launch.
+                Log.w("SunshineSyncAdapter", "Could not create the sync account");
+                return;
+            }
+            if (isSyncAdapterInitialized(context)) {
+                return;
+            }
+            // A new account was just set up by onAccountCreated, but one that an older version
+            // of the app created keeps whatever schedule that version gave it.  Both calls are
+            // cheap to repeat, and this runs once per version.
+            int interval = new SyncScheduler(context).getInterval();
+            configurePeriodicSync(context, interval, interval / 3);
+            ContentResolver.setSyncAutomatically(account,
+                    context.getString(R.string.content_authority), true);
+
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .putInt(context.getString(R.string.pref_sync_bootstrap_version_key),
+                            BuildConfig.VERSION_CODE)
+                    .commit();
+        } finally {
+            StartupTrace.endSpan(StartupTrace.SYNC_BOOTSTRAP);
+        }
     }
 
     /**
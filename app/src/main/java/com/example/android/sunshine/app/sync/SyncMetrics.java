@@ -0,0 +1,358 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Environment;
+import android.support.v4.os.TraceCompat;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps what the last {@link #CAPACITY} syncs spent their time on, so that a slow sync can be
+ * pinned on the network, the parser or SQLite.
+ *
+ * Each sync fills a {@link Recorder}: the wall time of each stage of onPerformSync, how long
+ * each forecast download waited for the server, read the body and parsed it, and counters for
+ * bytes, rows and retries.  When the sync is done the record is written as JSON into a ring
+ * buffer in its own preferences file, overwriting the oldest one.  SettingsActivity shows the
+ * records and can export them to a file.
+ */
+public class SyncMetrics {
+
+    private static final String LOG_TAG = SyncMetrics.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_metrics";
+    static final int CAPACITY = 32;
+
+    private static final String KEY_RECORD_PREFIX = "record.";
+    private static final String KEY_NEXT_SLOT = "next_slot";
+
+    static final String EXPORT_FILE_NAME = "sync_metrics.json";
+
+    // Stages of onPerformSync, in the order they run.
+    public static final String STAGE_PREPARE = "prepare";
+    public static final String STAGE_FETCH = "fetch";
+    public static final String STAGE_HOURLY = "hourly";
+    public static final String STAGE_STORE = "store";
+    public static final String STAGE_WIDGETS = "widgets";
+    public static final String STAGE_MUZEI = "muzei";
+    public static final String STAGE_WEARABLE = "wearable";
+    public static final String STAGE_NOTIFICATION = "notification";
+    public static final String STAGE_SNAPSHOT = "snapshot";
+    public static final String STAGE_RESCHEDULE = "reschedule";
+
+    // Counters every record has, even when they stayed at 0.
+    public static final String COUNTER_BYTES = "bytes";
+    public static final String COUNTER_ROWS_WRITTEN = "rows_written";
+    public static final String COUNTER_ROWS_CHANGED = "rows_changed";
+    public static final String COUNTER_ROWS_DELETED = "rows_deleted";
+    public static final String COUNTER_RETRIES = "retries";
+
+    // Record fields.  Durations are in microseconds.
+    static final String FIELD_START = "start";
+    static final String FIELD_DURATION = "duration_us";
+    static final String FIELD_STAGES = "stages_us";
+    static final String FIELD_COUNTERS = "counters";
+    static final String FIELD_FETCHES = "fetches";
+    static final String FIELD_FAILURES = "failures";
+    static final String FIELD_LOCATION = "location";
+    static final String FIELD_STATUS = "status";
+    static final String FIELD_CONNECT = "connect_us";
+    static final String FIELD_READ = "read_us";
+    static final String FIELD_PARSE = "parse_us";
+    static final String FIELD_RESPONSE_CODE = "response_code";
+    static final String FIELD_ATTEMPTS = "attempts";
+
+    /**
+     * Collects the metrics of one sync.  Stages are timed on the sync thread, and also show up
+     * in systrace; the other methods may be called from any thread.
+     */
+    public static class Recorder {
+        private final long mStartMillis = System.currentTimeMillis();
+        private final long mStartNanos = System.nanoTime();
+        private final Map<String, Long> mStageStartNanos = new LinkedHashMap<String, Long>();
+        private final Map<String, Long> mStageNanos = new LinkedHashMap<String, Long>();
+        private final Map<String, Long> mCounters = new LinkedHashMap<String, Long>();
+        private final JSONArray mFetches = new JSONArray();
+        private final List<String> mFailures = new ArrayList<String>();
+
+        public Recorder() {
+            mCounters.put(COUNTER_BYTES, 0L);
+            mCounters.put(COUNTER_ROWS_WRITTEN, 0L);
+            mCounters.put(COUNTER_ROWS_CHANGED, 0L);
+            mCounters.put(COUNTER_ROWS_DELETED, 0L);
+            mCounters.put(COUNTER_RETRIES, 0L);
+        }
+
+        public synchronized void beginStage(String stage) {
+            TraceCompat.beginSection("Sync." + stage);
+            mStageStartNanos.put(stage, System.nanoTime());
+        }
+
+        public synchronized void endStage(String stage) {
+            TraceCompat.endSection();
+            Long start = mStageStartNanos.remove(stage);
+            if (start == null) {
+                Log.w(LOG_TAG, "Stage " + stage + " ended without beginning");
+                return;
+            }
+            Long previous = mStageNanos.get(stage);
+            long nanos = System.nanoTime() - start;
+            mStageNanos.put(stage, previous == null ? nanos : previous + nanos);
+        }
+
+        public synchronized void count(String counter, long delta) {
+            Long value = mCounters.get(counter);
+            mCounters.put(counter, value == null ? delta : value + delta);
+        }
+
+        public synchronized void recordFailure(String reason) {
+            mFailures.add(reason);
+        }
+
+        /**
+         * Records how one forecast download went, and adds its bytes to the total.
+         */
+        public synchronized void recordFetch(ForecastFetcher.Result result) {
+            try {
+                mFetches.put(new JSONObject()
+                        .put(FIELD_LOCATION, result.request.locationSetting)
+                        .put(FIELD_STATUS, getStatusName(result.status))
+                        .put(FIELD_RESPONSE_CODE, result.responseCode)
+                        .put(FIELD_ATTEMPTS, result.attempts)
+                        .put(FIELD_CONNECT, result.connectNanos / 1000)
+                        .put(FIELD_READ, result.readNanos / 1000)
+                        .put(FIELD_PARSE, result.parseNanos / 1000)
+                        .put(COUNTER_BYTES, result.bytes));
+            } catch (JSONException e) {
+                // Only thrown for non-finite doubles, and there are none.
+                throw new IllegalStateException(e);
+            }
+            count(COUNTER_BYTES, result.bytes);
+            count(COUNTER_RETRIES, result.attempts - 1);
+            if (result.status == ForecastFetcher.Result.STATUS_IO_ERROR
+                    || result.status == ForecastFetcher.Result.STATUS_INVALID) {
+                recordFailure(result.request.locationSetting + ": "
+                        + getStatusName(result.status));
+            }
+        }
+
+        synchronized JSONObject toJson() {
+            try {
+                JSONObject stages = new JSONObject();
+                for (Map.Entry<String, Long> stage : mStageNanos.entrySet()) {
+                    stages.put(stage.getKey(), stage.getValue() / 1000);
+                }
+                JSONObject counters = new JSONObject();
+                for (Map.Entry<String, Long> counter : mCounters.entrySet()) {
+                    counters.put(counter.getKey(), counter.getValue());
+                }
+                return new JSONObject()
+                        .put(FIELD_START, mStartMillis)
+                        .put(FIELD_DURATION, (System.nanoTime() - mStartNanos) / 1000)
+                        .put(FIELD_STAGES, stages)
+                        .put(FIELD_COUNTERS, counters)
+                        .put(FIELD_FETCHES, new JSONArray(mFetches.toString()))
+                        .put(FIELD_FAILURES, new JSONArray(mFailures));
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    public SyncMetrics(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds a finished sync to the ring buffer, replacing the oldest record once it is full.
+     */
+    public void save(Recorder recorder) {
+        JSONObject record = recorder.toJson();
+        int slot = mPrefs.getInt(KEY_NEXT_SLOT, 0);
+        mPrefs.edit()
+                .putString(KEY_RECORD_PREFIX + slot, record.toString())
+                .putInt(KEY_NEXT_SLOT, (slot + 1) % CAPACITY)
+                .apply();
+        Log.d(LOG_TAG, "Sync took " + record.optLong(FIELD_DURATION) / 1000 + "ms: "
+                + record.optJSONObject(FIELD_STAGES));
+    }
+
+    /**
+     * @return the records in the buffer, newest first
+     */
+    public List<JSONObject> getRecords() {
+        List<JSONObject> records = new ArrayList<JSONObject>(CAPACITY);
+        for (int age = 0; age < CAPACITY; age++) {
+            JSONObject record = getRecord(age);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the record of the last sync, or null if none was recorded
+     */
+    public JSONObject getLatestRecord() {
+        return getRecord(0);
+    }
+
+    // 0 is the newest record.
+    private JSONObject getRecord(int age) {
+        int slot = (mPrefs.getInt(KEY_NEXT_SLOT, 0) - 1 - age + CAPACITY) % CAPACITY;
+        String json = mPrefs.getString(KEY_RECORD_PREFIX + slot, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return new JSONObject(json);
+        } catch (JSONException e) {
+            Log.w(LOG_TAG, "Dropping a corrupt sync record", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return how long the sync of a record took, in milliseconds
+     */
+    public static long getDurationMillis(JSONObject record) {
+        return record.optLong(FIELD_DURATION) / 1000;
+    }
+
+    /**
+     * @return when the sync of a record started, in milliseconds since the epoch
+     */
+    public static long getStartMillis(JSONObject record) {
+        return record.optLong(FIELD_START);
+    }
+
+    public void clear() {
+        mPrefs.edit().clear().apply();
+    }
+
+    /**
+     * Writes every record, newest first, as a JSON array to a file that can be pulled off the
+     * device: the app's external files directory when it is mounted, otherwise its cache.
+     *
+     * @return the file, or null if it could not be written
+     */
+    public File export() {
+        File dir = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())
+                ? mContext.getExternalFilesDir(null) : null;
+        if (dir == null) {
+            dir = mContext.getCacheDir();
+        }
+        File file = new File(dir, EXPORT_FILE_NAME);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(new JSONArray(getRecords()).toString(2));
+            return file;
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Could not export the sync metrics", e);
+            return null;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a few lines describing a record, for showing it to a person
+     */
+    public static String describe(Context context, JSONObject record) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(DateUtils.formatDateTime(context, record.optLong(FIELD_START),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME))
+                .append(", ").append(formatMillis(record.optLong(FIELD_DURATION))).append('\n');
+
+        JSONObject stages = record.optJSONObject(FIELD_STAGES);
+        if (stages != null) {
+            appendFields(builder, stages, true);
+        }
+        JSONArray fetches = record.optJSONArray(FIELD_FETCHES);
+        for (int i = 0; fetches != null && i < fetches.length(); i++) {
+            JSONObject fetch = fetches.optJSONObject(i);
+            builder.append("  ").append(fetch.optString(FIELD_LOCATION))
+                    .append(' ').append(fetch.optString(FIELD_STATUS))
+                    .append(" (HTTP ").append(fetch.optInt(FIELD_RESPONSE_CODE))
+                    .append(", attempt ").append(fetch.optInt(FIELD_ATTEMPTS, 1)).append(')')
+                    .append(": connect ").append(formatMillis(fetch.optLong(FIELD_CONNECT)))
+                    .append(", read ").append(formatMillis(fetch.optLong(FIELD_READ)))
+                    .append(", parse ").append(formatMillis(fetch.optLong(FIELD_PARSE)))
+                    .append(", ").append(fetch.optLong(COUNTER_BYTES)).append(" bytes\n");
+        }
+        JSONObject counters = record.optJSONObject(FIELD_COUNTERS);
+        if (counters != null) {
+            appendFields(builder, counters, false);
+        }
+        JSONArray failures = record.optJSONArray(FIELD_FAILURES);
+        for (int i = 0; failures != null && i < failures.length(); i++) {
+            builder.append("  failed ").append(failures.optString(i)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void appendFields(StringBuilder builder, JSONObject fields, boolean durations) {
+        builder.append(' ');
+        Iterator<String> keys = fields.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            builder.append(' ').append(key).append(' ');
+            if (durations) {
+                builder.append(formatMillis(fields.optLong(key)));
+            } else {
+                builder.append(fields.optLong(key));
+            }
+        }
+        builder.append('\n');
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.US, "%.1fms", micros / 1000.0);
+    }
+
+    static String getStatusName(int status) {
+        switch (status) {
+            case ForecastFetcher.Result.STATUS_FETCHED:
+                return "fetched";
+            case ForecastFetcher.Result.STATUS_NOT_MODIFIED:
+                return "not_modified";
+            case ForecastFetcher.Result.STATUS_UNCHANGED:
+                return "unchanged";
+            case ForecastFetcher.Result.STATUS_IO_ERROR:
+                return "io_error";
+            case ForecastFetcher.Result.STATUS_INVALID:
+                return "invalid";
+            default:
+                return "unknown";
+        }
+    }
+}
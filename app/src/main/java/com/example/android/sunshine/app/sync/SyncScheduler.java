@@ -0,0 +1,233 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.AsyncTask;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Picks the periodic sync interval instead of always waiting SYNC_INTERVAL.
+ *
+ * Starting from SYNC_INTERVAL, the interval shrinks when:
+ * <ul>
+ *     <li>the forecasts have been changing from one sync to the next,</li>
+ *     <li>the coming hours are when the user usually opens the app,</li>
+ *     <li>the device is charging on an unmetered network,</li>
+ *     <li>or the server pushed a weather alert recently,</li>
+ * </ul>
+ * and grows when the opposite holds, overnight for most users, or when the server has been
+ * pushing forecast deltas, which keep the data fresh without polling.  It always stays between
+ * {@link #MIN_INTERVAL} and {@link #MAX_INTERVAL}.
+ *
+ * The statistics behind it are kept in their own preferences file: a moving average of the
+ * share of days that changed per location, and decaying counts of app opens per hour of day.
+ */
+public class SyncScheduler {
+
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_scheduler";
+
+    private static final String KEY_VOLATILITY_SUFFIX = ".volatility";
+    private static final String KEY_USAGE_PREFIX = "usage.";
+    private static final String KEY_LAST_PUSH = "last_push";
+    private static final String KEY_LAST_DELTA = "last_delta";
+    private static final String KEY_INTERVAL = "interval";
+
+    // In seconds.
+    static final int MIN_INTERVAL = 60 * 60;
+    static final int MAX_INTERVAL = 8 * 60 * 60;
+
+    // Weight of the newest sync in a location's volatility.
+    static final float VOLATILITY_SMOOTHING = 0.3f;
+    // What we assume of a location before its first sync, halfway between steady and changing.
+    static final float DEFAULT_VOLATILITY = 0.5f;
+    // Every app open scales the older counts by this, so habits from months ago fade out.
+    private static final float USAGE_DECAY = 0.98f;
+    // Below this many (decayed) opens, usage says nothing yet.
+    private static final float MIN_USAGE = 10;
+    // How many hours ahead of now count as "the coming hours".
+    private static final int USAGE_WINDOW_HOURS = 3;
+    // A push within this long makes the next syncs come sooner.
+    private static final long RECENT_PUSH_MILLIS = 6 * 60 * 60 * 1000;
+    // While deltas arrived within this long, polling is only a safety net.
+    private static final long RECENT_DELTA_MILLIS = 24 * 60 * 60 * 1000;
+    // Changes smaller than this aren't worth re-registering the periodic sync for.
+    private static final float RESCHEDULE_THRESHOLD = 0.1f;
+
+    private final SharedPreferences mPrefs;
+
+    public SyncScheduler(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Folds the outcome of one sync of a location into its volatility.  A forecast the server
+     * didn't resend counts as a sync where nothing changed.
+     */
+    public void recordForecastChange(String locationSetting, int changedDays, int dayCount) {
+        float changed = dayCount == 0 ? 0 : Math.min(1f, (float) changedDays / dayCount);
+        float volatility = getVolatility(locationSetting);
+        mPrefs.edit().putFloat(locationSetting + KEY_VOLATILITY_SUFFIX,
+                volatility + VOLATILITY_SMOOTHING * (changed - volatility)).apply();
+    }
+
+    /**
+     * @return the moving average of the share of days that changed per sync, from 0 to 1
+     */
+    public float getVolatility(String locationSetting) {
+        return mPrefs.getFloat(locationSetting + KEY_VOLATILITY_SUFFIX, DEFAULT_VOLATILITY);
+    }
+
+    public void recordAppOpen(long timeMillis) {
+        int hour = getHourOfDay(timeMillis);
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (int h = 0; h < 24; h++) {
+            float count = getUsage(h) * USAGE_DECAY;
+            editor.putFloat(KEY_USAGE_PREFIX + h, h == hour ? count + 1 : count);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Records an app open without touching the disk on the calling thread, for MainActivity.
+     */
+    public static void recordAppOpenInBackground(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final long now = System.currentTimeMillis();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                new SyncScheduler(appContext).recordAppOpen(now);
+            }
+        });
+    }
+
+    public void recordPush(long timeMillis) {
+        mPrefs.edit().putLong(KEY_LAST_PUSH, timeMillis).apply();
+    }
+
+    /**
+     * Records that a pushed {@link ForecastDelta} was applied.
+     */
+    public void recordDelta(long timeMillis) {
+        mPrefs.edit().putLong(KEY_LAST_DELTA, timeMillis).apply();
+    }
+
+    /**
+     * @return how much more than average the user opens the app in the hours starting at the
+     * given time: 1 when they are as likely as any other, or when there isn't enough history
+     */
+    float getUsageRatio(long timeMillis) {
+        float total = 0;
+        for (int h = 0; h < 24; h++) {
+            total += getUsage(h);
+        }
+        if (total < MIN_USAGE) {
+            return 1;
+        }
+        int hour = getHourOfDay(timeMillis);
+        float window = 0;
+        for (int i = 0; i < USAGE_WINDOW_HOURS; i++) {
+            window += getUsage((hour + i) % 24);
+        }
+        return (window / USAGE_WINDOW_HOURS) / (total / 24);
+    }
+
+    private float getUsage(int hour) {
+        return mPrefs.getFloat(KEY_USAGE_PREFIX + hour, 0);
+    }
+
+    /**
+     * @return the interval the periodic sync was last registered with, in seconds
+     */
+    public int getInterval() {
+        return mPrefs.getInt(KEY_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+    }
+
+    /**
+     * Works out the interval from the statistics and the device's current state, and
+     * re-registers the periodic sync if it moved by more than a little.
+     */
+    public void reschedule(Context context) {
+        List<String> locations = new ArrayList<String>();
+        locations.add(Utility.getPreferredLocation(context));
+        locations.addAll(Utility.getSavedLocations(context));
+
+        long now = System.currentTimeMillis();
+        int interval = computeInterval(locations, now, isCharging(context),
+                isUnmetered(context));
+        int current = getInterval();
+        if (Math.abs(interval - current) <= current * RESCHEDULE_THRESHOLD) {
+            return;
+        }
+        Log.d(LOG_TAG, "Syncing every " + interval / 60 + " minutes instead of "
+                + current / 60);
+        SunshineSyncAdapter.configurePeriodicSync(context, interval, interval / 3);
+        mPrefs.edit().putInt(KEY_INTERVAL, interval).apply();
+    }
+
+    /**
+     * @return the interval in seconds, for syncs covering the given locations
+     */
+    int computeInterval(List<String> locations, long now, boolean charging,
+                        boolean unmetered) {
+        // One sync fetches every location, so the most changeable one sets the pace.
+        float volatility = 0;
+        for (String location : locations) {
+            volatility = Math.max(volatility, getVolatility(location));
+        }
+        boolean recentPush = now - mPrefs.getLong(KEY_LAST_PUSH, 0) < RECENT_PUSH_MILLIS;
+        boolean pushedDeltas = now - mPrefs.getLong(KEY_LAST_DELTA, 0) < RECENT_DELTA_MILLIS;
+        return computeInterval(volatility, getUsageRatio(now), charging, unmetered, recentPush,
+                pushedDeltas);
+    }
+
+    static int computeInterval(float volatility, float usageRatio, boolean charging,
+                               boolean unmetered, boolean recentPush, boolean pushedDeltas) {
+        // From 1.5x the base interval for forecasts that never change, to 0.5x for ones that
+        // change every time.
+        double interval = SunshineSyncAdapter.SYNC_INTERVAL * (1.5 - volatility);
+        // Sync up to twice as often ahead of busy hours, and half as often ahead of quiet ones.
+        interval *= usageRatio <= 0.5f ? 2 : Math.max(0.5, 1 / usageRatio);
+        if (charging && unmetered) {
+            interval *= 0.75;
+        }
+        if (recentPush) {
+            interval *= 0.5;
+        }
+        if (pushedDeltas) {
+            interval *= 2;
+        }
+        return (int) Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+    }
+
+    private static boolean isCharging(Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so this reads the last broadcast without a receiver.
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private static boolean isUnmetered(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return !cm.isActiveNetworkMetered();
+    }
+
+    private static int getHourOfDay(long timeMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMillis);
+        return calendar.get(Calendar.HOUR_OF_DAY);
+    }
+}
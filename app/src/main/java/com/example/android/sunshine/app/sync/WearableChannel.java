@@ -0,0 +1,142 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the forecast over to the wearable from the sync thread, and only when it changed.
+ *
+ * A push waits for the Google API client to connect and for the Data Layer to take the data
+ * item, each with a timeout, instead of firing at a client that may still be connecting.  The
+ * hash of the last payload the Data Layer accepted is kept, and a payload with the same hash is
+ * not sent again, so a sync that changed nothing the watch shows doesn't wake either device up.
+ * A push that failed leaves the hash alone, and the next sync tries again.  That is why the
+ * payload is built from what is stored rather than from what a sync just fetched: a sync that
+ * finds the forecast unchanged still offers it, and only the hash decides whether it goes out.
+ */
+public class WearableChannel {
+
+    private static final String LOG_TAG = WearableChannel.class.getSimpleName();
+
+    static final String PREFS_NAME = "wearable_channel";
+
+    private static final String KEY_LAST_PUSHED_HASH = "last_pushed_hash";
+
+    static final String WEATHER_DATA_PATH = "/weather_data_path_wearable";
+    // The preferred location's forecast, packed by WearableForecastEncoder.
+    static final String FORECAST_KEY = "forecast_key_wearable";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long PUT_TIMEOUT_SECONDS = 15;
+
+    private final SharedPreferences mPrefs;
+    private final GoogleApiClient mGoogleApiClient;
+
+    public WearableChannel(Context context, GoogleApiClient googleApiClient) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mGoogleApiClient = googleApiClient;
+    }
+
+    /**
+     * Pushes the stored forecast for the preferred location, unless the wearable already has it.
+     * Blocks, so it must not be called on the main thread.
+     *
+     * @return true if the forecast was handed over to the Data Layer
+     */
+    public boolean push(ForecastSnapshot snapshot) {
+        if (snapshot.isEmpty()) {
+            return false;
+        }
+        return push(encode(snapshot));
+    }
+
+    /**
+     * Pushes the forecast, unless it is the one the wearable already has.  Blocks, so it must not
+     * be called on the main thread.
+     *
+     * @return true if the forecast was handed over to the Data Layer
+     */
+    public boolean push(byte[] forecast) {
+        if (wasPushed(forecast)) {
+            Log.d(LOG_TAG, "Wearable already has this forecast");
+            return false;
+        }
+        if (!put(forecast)) {
+            return false;
+        }
+        recordPushed(forecast);
+        return true;
+    }
+
+    /**
+     * Connects if needed and hands the forecast over to the Data Layer, each with a timeout.
+     *
+     * @return true if the Data Layer accepted it
+     */
+    boolean put(byte[] forecast) {
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult connection = mGoogleApiClient.blockingConnect(
+                    CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!connection.isSuccess()) {
+                Log.w(LOG_TAG, "Could not connect to push the forecast: " + connection);
+                return false;
+            }
+        }
+
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_DATA_PATH);
+        putDataMapRequest.getDataMap().putByteArray(FORECAST_KEY, forecast);
+        DataApi.DataItemResult result = Wearable.DataApi
+                .putDataItem(mGoogleApiClient, putDataMapRequest.asPutDataRequest())
+                .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.getStatus().isSuccess()) {
+            Log.w(LOG_TAG, "Could not push the forecast: " + result.getStatus());
+            return false;
+        }
+        Log.v(LOG_TAG, "Pushed " + forecast.length + " bytes of forecast to "
+                + result.getDataItem().getUri());
+        return true;
+    }
+
+    /**
+     * @return the snapshot's days packed by WearableForecastEncoder
+     */
+    static byte[] encode(ForecastSnapshot snapshot) {
+        WearableForecastEncoder encoder = new WearableForecastEncoder();
+        Time time = new Time();
+        for (int i = 0; i < snapshot.size(); i++) {
+            // Dates are stored as the start of their day in local time, see normalizeDate().
+            long date = snapshot.getDate(i);
+            time.set(date);
+            encoder.addDay(Time.getJulianDay(date, time.gmtoff) - Time.EPOCH_JULIAN_DAY,
+                    snapshot.getWeatherId(i), snapshot.getMaxTemp(i), snapshot.getMinTemp(i));
+        }
+        return encoder.toByteArray();
+    }
+
+    /**
+     * @return true if this forecast is the last one the Data Layer accepted
+     */
+    boolean wasPushed(byte[] forecast) {
+        return hash(forecast).equals(mPrefs.getString(KEY_LAST_PUSHED_HASH, null));
+    }
+
+    void recordPushed(byte[] forecast) {
+        mPrefs.edit().putString(KEY_LAST_PUSHED_HASH, hash(forecast)).apply();
+    }
+
+    private static String hash(byte[] forecast) {
+        return ForecastHttpCache.toHexString(
+                ForecastHttpCache.newPayloadDigest().digest(forecast));
+    }
+}
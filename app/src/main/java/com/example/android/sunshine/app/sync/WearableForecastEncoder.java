@@ -0,0 +1,75 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Packs the preferred location's forecast for the wearable into a few bytes a day, so that the
+ * whole forecast fits in the one data item the watch already syncs.
+ *
+ * The format, version {@link #VERSION}, is a run of unsigned LEB128 varints:
+ * <pre>
+ *   version
+ *   number of days
+ *   per day:
+ *     days since the previous day, or since 1970-01-01 for the first
+ *     OWM weather condition code
+ *     high temperature in tenths of a degree, zigzag coded
+ *     high minus low temperature in tenths of a degree, zigzag coded
+ * </pre>
+ * A day usually takes six or seven bytes.  The wearable decodes it in WearableForecast, which has
+ * to change in step with this class; a new layout needs a new version.
+ */
+public class WearableForecastEncoder {
+
+    static final int VERSION = 1;
+
+    // Temperatures are sent in tenths of a degree.
+    static final int TEMPERATURE_SCALE = 10;
+
+    private final ByteArrayOutputStream mDays = new ByteArrayOutputStream();
+    private int mDayCount;
+    private int mPreviousDay;
+
+    /**
+     * @param epochDay the day, counted from 1970-01-01; days have to be added in order
+     */
+    public void addDay(int epochDay, int weatherId, double high, double low) {
+        if (epochDay < mPreviousDay) {
+            throw new IllegalArgumentException("Day " + epochDay + " is out of order");
+        }
+        int scaledHigh = (int) Math.round(high * TEMPERATURE_SCALE);
+        int scaledLow = (int) Math.round(low * TEMPERATURE_SCALE);
+        writeVarint(mDays, epochDay - mPreviousDay);
+        writeVarint(mDays, weatherId);
+        writeVarint(mDays, zigzag(scaledHigh));
+        writeVarint(mDays, zigzag(scaledHigh - scaledLow));
+        mPreviousDay = epochDay;
+        mDayCount++;
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(mDays.size() + 4);
+        writeVarint(out, VERSION);
+        writeVarint(out, mDayCount);
+        byte[] days = mDays.toByteArray();
+        out.write(days, 0, days.length);
+        return out.toByteArray();
+    }
+
+    // Maps signed to unsigned so that small negative numbers stay short: 0, -1, 1, -2, ...
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.TimeZone;
+
+public class TestWatchFaceAllocations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceAllocations.class.getSimpleName();
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 320;
+
+    // The start of a minute, so that the frames below all fall within it.
+    private static final long MINUTE_START = 1444000020000L;
+
+    private static final int BENCHMARK_FRAMES = 500;
+
+    private WatchFaceState mState;
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mState = new WatchFaceState(mContext);
+        mState.setWeather(800, 21.4, 12.9);
+        mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    private void useRenderer(WatchFaceRenderer renderer) {
+        mRenderer = renderer;
+        mRenderer.setSize(WIDTH, HEIGHT);
+        mState.invalidate();
+    }
+
+    // What the engine does in onDraw.
+    private void drawFrame(long nowMillis, boolean ambient) {
+        if (mState.update(nowMillis, ambient)) {
+            mRenderer.bind(mState);
+        }
+        mCanvas.drawColor(0xff000000);
+        mRenderer.draw(mCanvas);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void assertFramesWithinAMinuteDoNotAllocate(boolean ambient) {
+        // Warm up, so that formatting, layout and drawing caches are filled.
+        drawFrame(MINUTE_START, ambient);
+        drawFrame(MINUTE_START + 500, ambient);
+
+        int allocations;
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            for (int second = 1; second < 60; second++) {
+                drawFrame(MINUTE_START + second * 1000, ambient);
+            }
+            allocations = Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertEquals("Error: " + mRenderer.getClass().getSimpleName()
+                + " allocated drawing a frame", 0, allocations);
+    }
+
+    public void testLayoutRendererDoesNotAllocate() {
+        useRenderer(new WatchFaceLayoutRenderer(mContext));
+        assertFramesWithinAMinuteDoNotAllocate(false);
+    }
+
+    public void testCanvasRendererDoesNotAllocate() {
+        useRenderer(new WatchFaceCanvasRenderer(mContext));
+        assertFramesWithinAMinuteDoNotAllocate(false);
+        assertFramesWithinAMinuteDoNotAllocate(true);
+    }
+
+    public void testCanvasLayerMatchesFullRedraw() {
+        useRenderer(new WatchFaceCanvasRenderer(mContext));
+        drawFrame(MINUTE_START, false);
+        // Only the time changes, so the layer is reused.
+        drawFrame(MINUTE_START + 60 * 1000, false);
+        Bitmap reused = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mRenderer.draw(new Canvas(reused));
+
+        WatchFaceRenderer fresh = new WatchFaceCanvasRenderer(mContext);
+        fresh.setSize(WIDTH, HEIGHT);
+        fresh.bind(mState);
+        Bitmap redrawn = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        fresh.draw(new Canvas(redrawn));
+
+        assertTrue("Error: Reusing the layer drew a different face", reused.sameAs(redrawn));
+    }
+
+    // Draws a frame a second for a while, so the renderer binds once a minute like on a watch.
+    private long timeFrames(boolean ambient) {
+        for (int i = 0; i < 20; i++) {
+            drawFrame(MINUTE_START + i * 1000, ambient);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            drawFrame(MINUTE_START + i * 1000, ambient);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / BENCHMARK_FRAMES;
+    }
+
+    public void testRendererBenchmark() {
+        useRenderer(new WatchFaceLayoutRenderer(mContext));
+        long layoutNanos = timeFrames(false);
+        long layoutAmbientNanos = timeFrames(true);
+        useRenderer(new WatchFaceCanvasRenderer(mContext));
+        long canvasNanos = timeFrames(false);
+        long canvasAmbientNanos = timeFrames(true);
+
+        Log.i(LOG_TAG, String.format("layout: %d us/frame, %d us/frame ambient",
+                layoutNanos / 1000, layoutAmbientNanos / 1000));
+        Log.i(LOG_TAG, String.format("canvas: %d us/frame, %d us/frame ambient",
+                canvasNanos / 1000, canvasAmbientNanos / 1000));
+    }
+
+    public void testUpdateOnlyReportsChanges() {
+        assertTrue(mState.update(MINUTE_START, false));
+        assertFalse("Error: Nothing changed within the minute",
+                mState.update(MINUTE_START + 30 * 1000, false));
+
+        assertTrue("Error: The minute changed", mState.update(MINUTE_START + 60 * 1000, false));
+        assertFalse(mState.update(MINUTE_START + 61 * 1000, false));
+
+        assertTrue("Error: Ambient mode changed", mState.update(MINUTE_START + 62 * 1000, true));
+        assertFalse(mState.update(MINUTE_START + 63 * 1000, true));
+
+        mState.setWeather(800, 21.4, 12.9);
+        assertFalse("Error: The same weather again is no change",
+                mState.update(MINUTE_START + 64 * 1000, true));
+        mState.setWeather(500, 18, 11);
+        assertTrue("Error: The weather changed", mState.update(MINUTE_START + 65 * 1000, true));
+        assertEquals(Util.formatTemperature(18), mState.getHighText());
+    }
+
+    // A state that doesn't depend on the device's time format setting.
+    private WatchFaceState createState(final boolean is24Hour) {
+        WatchFaceState state = new WatchFaceState(mContext) {
+            @Override
+            boolean is24HourFormat() {
+                return is24Hour;
+            }
+        };
+        state.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return state;
+    }
+
+    public void testTimeFormats() {
+        // 14:05 UTC.
+        long afternoon = 16800L * 24 * 60 * 60 * 1000 + (14 * 60 + 5) * 60 * 1000;
+
+        WatchFaceState state = createState(false);
+        state.update(afternoon, false);
+        assertTrue("Error: 12 hour time shows as " + state.getTimeText(),
+                state.getTimeText().startsWith("2:05 "));
+
+        state = createState(true);
+        state.update(afternoon, false);
+        assertEquals("14:05", state.getTimeText());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.TimeZone;
+
+public class TestWearableForecast extends AndroidTestCase {
+
+    // The same two days as the phone's TestWearableForecastEncoder encodes.
+    static final byte[] TWO_DAY_PAYLOAD = {
+            0x01, 0x02,
+            (byte) 0xa0, (byte) 0x83, 0x01, (byte) 0xa0, 0x06, (byte) 0xac, 0x03, (byte) 0xaa, 0x01,
+            0x01, (byte) 0xf4, 0x03, 0x45, 0x78
+    };
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    public void testDecode() {
+        WearableForecast forecast = WearableForecast.decode(TWO_DAY_PAYLOAD);
+        assertEquals(2, forecast.size());
+        assertEquals(16800, forecast.getEpochDay(0));
+        assertEquals(800, forecast.getWeatherId(0));
+        assertEquals(21.4, forecast.getHigh(0), 1e-9);
+        assertEquals(12.9, forecast.getLow(0), 1e-9);
+        assertEquals(16801, forecast.getEpochDay(1));
+        assertEquals(500, forecast.getWeatherId(1));
+        assertEquals(-3.5, forecast.getHigh(1), 1e-9);
+        assertEquals(-9.5, forecast.getLow(1), 1e-9);
+        assertEquals(1, forecast.indexOfDay(16801));
+        assertEquals(-1, forecast.indexOfDay(16802));
+    }
+
+    public void testBadPayloadsAreRejected() {
+        byte[] truncated = new byte[TWO_DAY_PAYLOAD.length - 1];
+        System.arraycopy(TWO_DAY_PAYLOAD, 0, truncated, 0, truncated.length);
+        byte[] newerVersion = TWO_DAY_PAYLOAD.clone();
+        newerVersion[0] = WearableForecast.VERSION + 1;
+        byte[] tooManyDays = {WearableForecast.VERSION, 0x7f, 0x01, 0x01, 0x01, 0x01};
+
+        for (byte[] payload : new byte[][]{truncated, newerVersion, tooManyDays}) {
+            try {
+                WearableForecast.decode(payload);
+                fail("Error: A bad payload was decoded");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testEpochDayFollowsTimeZone() {
+        long midnightUtc = 16800 * DAY_MILLIS;
+        assertEquals(16800, WearableForecast.getEpochDay(midnightUtc,
+                TimeZone.getTimeZone("UTC")));
+        assertEquals("Error: It is still the evening before in New York", 16799,
+                WearableForecast.getEpochDay(midnightUtc,
+                        TimeZone.getTimeZone("America/New_York")));
+        assertEquals(16800, WearableForecast.getEpochDay(midnightUtc + 23 * 60 * 60 * 1000,
+                TimeZone.getTimeZone("UTC")));
+    }
+
+    public void testFaceMovesOnToTheNextDayByItself() {
+        WatchFaceState state = new WatchFaceState(mContext);
+        state.setTimeZone(TimeZone.getTimeZone("UTC"));
+        state.setForecast(WearableForecast.decode(TWO_DAY_PAYLOAD));
+
+        long lastMinute = 16801 * DAY_MILLIS - 60 * 1000;
+        assertTrue(state.update(lastMinute, false));
+        assertEquals(800, state.getWeatherId());
+
+        assertTrue(state.update(lastMinute + 60 * 1000, false));
+        assertEquals("Error: The face didn't move on to the next day's weather",
+                500, state.getWeatherId());
+        assertFalse("Error: Picking the day's weather left the state dirty",
+                state.update(lastMinute + 90 * 1000, false));
+
+        state.update(lastMinute + DAY_MILLIS + 60 * 1000, false);
+        assertFalse("Error: Weather is shown past the end of the forecast", state.hasWeather());
+    }
+}
@@ -29,23 +29,13 @@ import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
-import android.util.TypedValue;
 import android.view.Display;
-import android.view.Gravity;
-import android.view.LayoutInflater;
 import android.view.SurfaceHolder;
-import android.view.View;
 import android.view.WindowInsets;
 import android.view.WindowManager;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.TextClock;
-import android.widget.TextView;
 
 import com.example.android.sunshine.danga.wearable.watchface.R;
 import com.google.android.gms.common.ConnectionResult;
@@ -67,18 +57,19 @@ import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours and minutes, the date and the weather. In ambient mode, the date
+ * and the weather icon aren't displayed. On devices with low-bit ambient mode, the text is drawn
+ * without anti-aliasing in ambient mode.
  */
 public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
     private static final Typeface NORMAL_TYPEFACE =
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Update rate in milliseconds for interactive mode. The time is shown without seconds, so we
+     * only update once a minute, on the minute, like ambient mode's time ticks.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
@@ -120,12 +111,11 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
         boolean mAmbient = false;
-        Time mTime;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                mFaceState.setTimeZone(TimeZone.getTimeZone(intent.getStringExtra("time-zone")));
+                invalidate();
             }
         };
         int mTapCount;
@@ -133,20 +123,15 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
         float mXOffset;
         float mYOffset;
 
-        private int specWidth;
-        private int specHeight;
         /**
-         * Watch Face Layout
+         * The text to show, formatted only when it changes
          */
-        private View watchfaceWeatherLayout;
+        private WatchFaceState mFaceState;
 
         /**
-         * Watch Face Layout components
+         * Draws the face, straight onto the canvas or through the inflated layout
          */
-        private LinearLayout watchfaceContainer;
-        private TextClock time;
-        private TextView date, highTempTextView, lowTempTextView;
-        private ImageView weatherDescIcon;
+        private WatchFaceRenderer mRenderer;
 
         private final Point displaySize = new Point();
 
@@ -159,23 +144,18 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
         GoogleApiClient mGoogleApiClient;
 
         private static final String WEARABLE_WEATHER_DATA_PATH = "/weather_data_path_wearable";
-        private static final String WEARABLE_WEATHER_ID_KEY = "weather_id_key_wearable";
-        private static final String WEARABLE_HIGH_TEMP_KEY = "high_temp_key_wearable";
-        private static final String WEARABLE_LOW_TEMP_KEY = "low_temp_key_wearable";
-
-        private static final int INVALID_WEATHER_ID = 2000;
-        private static final double INVALID_TEMP = 1000;
+        private static final String WEARABLE_FORECAST_KEY = "forecast_key_wearable";
 
-        private int weatherId;
-        private double highTemp, lowTemp;
+        /**
+         * Every day the phone synced, or null until the first forecast arrives
+         */
+        private WearableForecast mForecast;
 
         @Override
         public void onConnected(Bundle bundle) {
             Log.v(TAG, "onConnected: Successfully connected to Google API client");
             Wearable.DataApi.addListener(mGoogleApiClient, this);
-            if (weatherId == INVALID_WEATHER_ID
-                    || highTemp == INVALID_TEMP
-                    || lowTemp == INVALID_TEMP ) {
+            if (mForecast == null) {
                 Log.v(TAG, "onConnected: loading Initial Weather Data");
                 loadInitialWeatherData();
             }
@@ -228,27 +208,18 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
                     .build();
             mGoogleApiClient.connect();
 
-            mTime = new Time();
+            mFaceState = new WatchFaceState(SunshineWeatherWatchFace.this);
 
-            // Inflate the watchface layout
-            LayoutInflater inflater = (LayoutInflater) getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-            watchfaceWeatherLayout = inflater.inflate(R.layout.watchface_weather_layout, null);
+            if (getResources().getBoolean(R.bool.config_canvas_renderer)) {
+                mRenderer = new WatchFaceCanvasRenderer(SunshineWeatherWatchFace.this);
+            } else {
+                mRenderer = new WatchFaceLayoutRenderer(SunshineWeatherWatchFace.this);
+            }
 
             // Load display spec
             Display display = ((WindowManager) getSystemService(Context.WINDOW_SERVICE))
                     .getDefaultDisplay();
             display.getSize(displaySize);
-
-            // Initialize view components of watchface layout
-            watchfaceContainer = (LinearLayout) watchfaceWeatherLayout.findViewById(R.id.watchface_container);
-            time = (TextClock) watchfaceWeatherLayout.findViewById(R.id.watch_time_textClock);
-            date = (TextView) watchfaceWeatherLayout.findViewById(R.id.watch_date_textView);
-            weatherDescIcon = (ImageView) watchfaceWeatherLayout.findViewById(R.id.watch_weather_desc_imageView);
-            highTempTextView = (TextView) watchfaceWeatherLayout.findViewById(R.id.watch_high_temp_textView);
-            lowTempTextView = (TextView) watchfaceWeatherLayout.findViewById(R.id.watch_low_temp_textView);
-            weatherId = INVALID_WEATHER_ID;
-            highTemp = INVALID_TEMP;
-            lowTemp = INVALID_TEMP;
         }
 
         @Override
@@ -266,8 +237,7 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
                 mGoogleApiClient.connect();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mFaceState.setTimeZone(TimeZone.getDefault());
             } else {
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
@@ -305,12 +275,19 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
         private void updateWeatherDataFromDataItem(DataItem item) {
             Log.v(TAG, "updating weather data");
             DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-            weatherId = dataMap.getInt(WEARABLE_WEATHER_ID_KEY, INVALID_WEATHER_ID);
-            highTemp = dataMap.getDouble(WEARABLE_HIGH_TEMP_KEY, INVALID_TEMP);
-            lowTemp = dataMap.getDouble(WEARABLE_LOW_TEMP_KEY, INVALID_TEMP);
-            Log.v(TAG, "weatherId = " + String.valueOf(weatherId)
-                    + "highTemp = " + String.valueOf(highTemp)
-                    + "lowTemp = " + String.valueOf(lowTemp));
+            byte[] payload = dataMap.getByteArray(WEARABLE_FORECAST_KEY);
+            if (payload == null) {
+                Log.w(TAG, "Data item has no forecast");
+                return;
+            }
+            try {
+                mForecast = WearableForecast.decode(payload);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Could not read the forecast", e);
+                return;
+            }
+            mFaceState.setForecast(mForecast);
+            Log.v(TAG, mForecast.size() + " days of forecast from " + payload.length + " bytes");
         }
 
 
@@ -343,8 +320,8 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
             } else {
                 mXOffset = mYOffset = 0;
             }
-            specWidth = View.MeasureSpec.makeMeasureSpec(displaySize.x, View.MeasureSpec.EXACTLY);
-            specHeight = View.MeasureSpec.makeMeasureSpec(displaySize.y, View.MeasureSpec.EXACTLY);
+            mRenderer.setSize(displaySize.x, displaySize.y);
+            mFaceState.invalidate();
         }
 
         @Override
@@ -369,9 +346,7 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
                 if (mLowBitAmbient) {
                     //Log.v(TAG, "onAmbientModeChanged: LowBitAmbient is true");
                     mAntialias = !mAmbient;
-                    time.getPaint().setAntiAlias(mAntialias);
-                    highTempTextView.getPaint().setAntiAlias(mAntialias);
-                    lowTempTextView.getPaint().setAntiAlias(mAntialias);
+                    mRenderer.setAntiAlias(mAntialias);
                 }
                 invalidate();
             }
@@ -383,86 +358,17 @@ public class SunshineWeatherWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            //Log.v(TAG, "onDraw withm ambient = " + String.valueOf(mAmbient));
-
-            mTime.setToNow();
-            if (!mAmbient) {
-                watchfaceContainer.setBackgroundColor(ContextCompat.getColor(
-                        getApplicationContext(),
-                        R.color.primary_bgr)
-                );
-                if (date.getVisibility() == View.GONE)
-                    date.setVisibility(View.VISIBLE);
-                date.setText(Util.formatDate(mTime.toMillis(true)));
-                if (time.is24HourModeEnabled()) {
-                    time.setFormat24Hour("HH:mm");
-                    time.setTextColor(ContextCompat.getColor(
-                            getApplicationContext(),
-                            R.color.primary_text_color)
-                    );
-                    time.setTextSize(TypedValue.COMPLEX_UNIT_SP, 55);
-                } else {
-                    time.setFormat12Hour("HH:mm a");
-                }
-                if (highTemp != INVALID_TEMP && lowTemp != INVALID_TEMP) {
-                    highTempTextView.setText(Util.formatTemperature(highTemp));
-                    highTempTextView.setTextColor(ContextCompat.getColor(
-                            getApplicationContext(),
-                            R.color.primary_text_color)
-                    );
-                    lowTempTextView.setText(Util.formatTemperature(lowTemp));
-                    lowTempTextView.setTextColor(ContextCompat.getColor(
-                            getApplicationContext(),
-                            R.color.primary_sub_text_color)
-                    );
-                    if (weatherDescIcon.getVisibility() == View.GONE)
-                        weatherDescIcon.setVisibility(View.VISIBLE);
-                    weatherDescIcon.setImageResource(Util.getIconResourceForWeatherCondition(weatherId));
-                }
-            } else { // Ambient Mode
-                watchfaceContainer.setBackgroundColor(ContextCompat.getColor(
-                        getApplicationContext(),
-                        R.color.ambient_bgr_color)
-                );
-                date.setVisibility(View.GONE);
-                time.setTextColor(ContextCompat.getColor(
-                        getApplicationContext(),
-                        R.color.ambient_text_color)
-                );
-                if (time.is24HourModeEnabled()) {
-                    time.setFormat24Hour("HH:mm");
-                    time.setTextSize(TypedValue.COMPLEX_UNIT_SP, 55);
-                } else {
-                    time.setFormat12Hour("HH:mm a");
-                }
-                if (highTemp != INVALID_TEMP && lowTemp != INVALID_TEMP) {
-                    highTempTextView.setTextColor(ContextCompat.getColor(
-                            getApplicationContext(),
-                            R.color.ambient_text_color)
-                    );
-                    highTempTextView.setText(Util.formatTemperature(highTemp));
-                    lowTempTextView.setTextColor(ContextCompat.getColor(
-                            getApplicationContext(),
-                            R.color.ambient_sub_text_color)
-                    );
-                    lowTempTextView.setText(Util.formatTemperature(lowTemp));
-                    weatherDescIcon.setVisibility(View.GONE);
-                }
+            // Text, colors and layout are only redone when the minute, the date, the weather or
+            // the ambient mode changed.  Every other frame just redraws, without allocating.
+            if (mFaceState.update(System.currentTimeMillis(), mAmbient)) {
+                mRenderer.bind(mFaceState);
             }
-            watchfaceWeatherLayout.measure(specWidth, specHeight);
-            watchfaceWeatherLayout.layout(
-                    0,
-                    0,
-                    watchfaceWeatherLayout.getMeasuredWidth(),
-                    watchfaceWeatherLayout.getMeasuredHeight()
-            );
             canvas.drawColor(Color.BLACK);
             canvas.translate(mXOffset, mYOffset);
-            watchfaceWeatherLayout.draw(canvas);
+            mRenderer.draw(canvas);
         }
 
 
-
         /**
          * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
          * or stops it if it shouldn't be running but currently is.
@@ -1,11 +1,7 @@
 package com.example.android.sunshine.app;
 
-import android.content.Context;
-
 import com.example.android.sunshine.danga.wearable.watchface.R;
 
-import java.text.SimpleDateFormat;
-
 /**
  * Created by An on 1/16/2016.
  */
@@ -14,7 +10,7 @@ public class Util {
     /**
      * Date Format
      */
-    private static final String DATE_FORMAT = "EEE, MMM dd yyyy";
+    static final String DATE_FORMAT = "EEE, MMM dd yyyy";
 
     public static String formatTemperature(double temperature) {
         String suffix = "%1.0f°";
@@ -22,11 +18,6 @@ public class Util {
         return String.format(suffix, temperature);
     }
 
-    public static String formatDate (long dateInMillis) {
-        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
-        return sdf.format(dateInMillis);
-    }
-
     /**
      * Helper method to provide the icon resource id according to the weather condition id returned
      * by the OpenWeatherMap call.
@@ -0,0 +1,277 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.danga.wearable.watchface.R;
+
+/**
+ * Draws the watch face straight onto the canvas with a few Paints, instead of laying out and
+ * drawing a view tree like {@link WatchFaceLayoutRenderer}.
+ *
+ * It follows watchface_weather_layout, and shares its dimensions: the time, the date, a divider,
+ * then the weather icon with the high and low temperatures, all centered.  {@link #bind} works
+ * out where each piece goes and scales the icon into a bitmap.
+ *
+ * Everything but the time only changes with the weather, the date or the mode, so it is drawn
+ * into an off-screen layer, and only drawn again when one of those changed.  Once a minute,
+ * when only the time changed, binding is just placing the new time, and a frame is one
+ * drawBitmap() of the layer and one drawText().
+ */
+public class WatchFaceCanvasRenderer implements WatchFaceRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final Resources mResources;
+
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mDividerPaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+    private final Paint mIconPaint;
+
+    // Dimensions, in pixels.
+    private final float mPaddingTop;
+    private final float mTimeMarginTop;
+    private final float mTimeTextSize12Hour;
+    private final float mTimeTextSize24Hour;
+    private final float mDateMarginBottom;
+    private final float mDividerWidth;
+    private final float mDividerHeight;
+    private final float mDividerMarginBottom;
+    private final float mIconMarginRight;
+    private final float mHighTempMarginRight;
+
+    // Colors, resolved once.
+    private final int mBackgroundColor;
+    private final int mTextColor;
+    private final int mSubTextColor;
+    private final int mAmbientBackgroundColor;
+    private final int mAmbientTextColor;
+    private final int mAmbientSubTextColor;
+
+    private int mWidth;
+    private int mHeight;
+
+    // Everything but the time, and whether it needs drawing again before the next frame.
+    private Bitmap mLayer;
+    private Canvas mLayerCanvas;
+    private boolean mLayerDirty = true;
+
+    // What the last bind() left to draw.
+    private boolean mAmbient;
+    private boolean m24Hour;
+    private int mBackground;
+    private String mTimeText;
+    private String mDateText;
+    private String mHighText;
+    private String mLowText;
+    private boolean mShowDate;
+    private boolean mShowWeather;
+    private boolean mShowIcon;
+
+    // Where it goes.  Text is drawn centered on its x, or from its left edge for the weather row.
+    private float mCenterX;
+    private float mTimeBaseline;
+    private float mDateBaseline;
+    private float mDividerTop;
+    private float mIconLeft;
+    private float mIconTop;
+    private float mHighTempLeft;
+    private float mLowTempLeft;
+    private float mTempBaseline;
+
+    // The weather icon, scaled to the height of the temperatures.
+    private int mIconResourceId;
+    private Bitmap mIcon;
+    private int mIconBitmapResourceId;
+
+    public WatchFaceCanvasRenderer(Context context) {
+        mResources = context.getResources();
+
+        mPaddingTop = mResources.getDimension(R.dimen.watchface_padding_top);
+        mTimeMarginTop = mResources.getDimension(R.dimen.watchface_time_margin_top);
+        mTimeTextSize12Hour = mResources.getDimension(R.dimen.watchface_time_text_size);
+        mTimeTextSize24Hour = mResources.getDimension(R.dimen.watchface_time_text_size_24_hour);
+        mDateMarginBottom = mResources.getDimension(R.dimen.watchface_date_margin_bottom);
+        mDividerWidth = mResources.getDimension(R.dimen.watchface_divider_width);
+        mDividerHeight = mResources.getDimension(R.dimen.watchface_divider_height);
+        mDividerMarginBottom = mResources.getDimension(R.dimen.watchface_divider_margin_bottom);
+        mIconMarginRight = mResources.getDimension(R.dimen.watchface_icon_margin_right);
+        mHighTempMarginRight = mResources.getDimension(R.dimen.watchface_high_temp_margin_right);
+
+        mBackgroundColor = ContextCompat.getColor(context, R.color.primary_bgr);
+        mTextColor = ContextCompat.getColor(context, R.color.primary_text_color);
+        mSubTextColor = ContextCompat.getColor(context, R.color.primary_sub_text_color);
+        mAmbientBackgroundColor = ContextCompat.getColor(context, R.color.ambient_bgr_color);
+        mAmbientTextColor = ContextCompat.getColor(context, R.color.ambient_text_color);
+        mAmbientSubTextColor = ContextCompat.getColor(context, R.color.ambient_sub_text_color);
+
+        mTimePaint = createTextPaint(Paint.Align.CENTER);
+        mDatePaint = createTextPaint(Paint.Align.CENTER);
+        mDatePaint.setTextSize(mResources.getDimension(R.dimen.watchface_date_text_size));
+        mDatePaint.setColor(mSubTextColor);
+        float tempTextSize = mResources.getDimension(R.dimen.watchface_temp_text_size);
+        mHighTempPaint = createTextPaint(Paint.Align.LEFT);
+        mHighTempPaint.setTextSize(tempTextSize);
+        mLowTempPaint = createTextPaint(Paint.Align.LEFT);
+        mLowTempPaint.setTextSize(tempTextSize);
+
+        mDividerPaint = new Paint();
+        mDividerPaint.setColor(mSubTextColor);
+        mIconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    private static Paint createTextPaint(Paint.Align align) {
+        Paint paint = new Paint();
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        paint.setTextAlign(align);
+        return paint;
+    }
+
+    @Override
+    public void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        mCenterX = width / 2f;
+        mLayer = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height),
+                Bitmap.Config.ARGB_8888);
+        mLayerCanvas = new Canvas(mLayer);
+        mLayerDirty = true;
+    }
+
+    @Override
+    public void setAntiAlias(boolean antiAlias) {
+        mTimePaint.setAntiAlias(antiAlias);
+        mHighTempPaint.setAntiAlias(antiAlias);
+        mLowTempPaint.setAntiAlias(antiAlias);
+        mIconPaint.setFilterBitmap(antiAlias);
+        mLayerDirty = true;
+    }
+
+    /**
+     * Places the new time and, if anything else changed, picks the colors for the state, works
+     * out where everything is drawn, top to bottom, the way the layout would, and draws the layer
+     * again.
+     */
+    @Override
+    public void bind(WatchFaceState state) {
+        boolean ambient = state.isAmbient();
+        boolean is24Hour = state.is24Hour();
+        mTimeText = state.getTimeText();
+        if (!mLayerDirty && ambient == mAmbient && is24Hour == m24Hour
+                && TextUtils.equals(state.getDateText(), mDateText)
+                && state.hasWeather() == mShowWeather
+                && (!mShowWeather || (TextUtils.equals(state.getHighText(), mHighText)
+                        && TextUtils.equals(state.getLowText(), mLowText)
+                        && state.getIconResourceId() == mIconResourceId))) {
+            // Only the time changed, and it goes where it went before.
+            return;
+        }
+
+        mAmbient = ambient;
+        m24Hour = is24Hour;
+        mBackground = ambient ? mAmbientBackgroundColor : mBackgroundColor;
+        mDateText = state.getDateText();
+        mShowDate = !ambient;
+        mShowWeather = state.hasWeather();
+        mShowIcon = mShowWeather && !ambient;
+
+        mTimePaint.setTextSize(is24Hour ? mTimeTextSize24Hour : mTimeTextSize12Hour);
+        mTimePaint.setColor(ambient ? mAmbientTextColor : mTextColor);
+
+        float y = mPaddingTop + mTimeMarginTop;
+        mTimeBaseline = y - mTimePaint.ascent();
+        y += mTimePaint.descent() - mTimePaint.ascent();
+
+        if (mShowDate) {
+            mDateBaseline = y - mDatePaint.ascent();
+            y += mDatePaint.descent() - mDatePaint.ascent() + mDateMarginBottom;
+        }
+
+        mDividerTop = y;
+        y += mDividerHeight + mDividerMarginBottom;
+
+        if (mShowWeather) {
+            mHighText = state.getHighText();
+            mLowText = state.getLowText();
+            mIconResourceId = state.getIconResourceId();
+            mHighTempPaint.setColor(ambient ? mAmbientTextColor : mTextColor);
+            mLowTempPaint.setColor(ambient ? mAmbientSubTextColor : mSubTextColor);
+
+            float tempHeight = mHighTempPaint.descent() - mHighTempPaint.ascent();
+            float highWidth = mHighTempPaint.measureText(mHighText);
+            float lowWidth = mLowTempPaint.measureText(mLowText);
+            float rowWidth = highWidth + mHighTempMarginRight + lowWidth;
+            if (mShowIcon) {
+                bindIcon(Math.round(tempHeight));
+                rowWidth += mIcon.getWidth() + mIconMarginRight;
+            }
+
+            float x = (mWidth - rowWidth) / 2;
+            if (mShowIcon) {
+                mIconLeft = x;
+                mIconTop = y + (tempHeight - mIcon.getHeight()) / 2;
+                x += mIcon.getWidth() + mIconMarginRight;
+            }
+            mHighTempLeft = x;
+            mLowTempLeft = x + highWidth + mHighTempMarginRight;
+            mTempBaseline = y - mHighTempPaint.ascent();
+        }
+
+        drawLayer(mLayerCanvas);
+        mLayerDirty = false;
+    }
+
+    // Decodes and scales the icon, unless the one we have is already it.
+    private void bindIcon(int size) {
+        if (mIcon != null && mIconResourceId == mIconBitmapResourceId
+                && mIcon.getHeight() == size) {
+            return;
+        }
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, mIconResourceId);
+        int width = Math.max(1, decoded.getWidth() * size / decoded.getHeight());
+        mIcon = Bitmap.createScaledBitmap(decoded, width, size, true);
+        if (mIcon != decoded) {
+            decoded.recycle();
+        }
+        mIconBitmapResourceId = mIconResourceId;
+    }
+
+    private void drawLayer(Canvas canvas) {
+        // Replace what was there, the ambient background is not quite opaque.
+        canvas.drawColor(mBackground, PorterDuff.Mode.SRC);
+        if (mShowDate) {
+            canvas.drawText(mDateText, mCenterX, mDateBaseline, mDatePaint);
+        }
+        canvas.drawRect(mCenterX - mDividerWidth / 2, mDividerTop,
+                mCenterX + mDividerWidth / 2, mDividerTop + mDividerHeight, mDividerPaint);
+        if (mShowWeather) {
+            if (mShowIcon) {
+                canvas.drawBitmap(mIcon, mIconLeft, mIconTop, mIconPaint);
+            }
+            canvas.drawText(mHighText, mHighTempLeft, mTempBaseline, mHighTempPaint);
+            canvas.drawText(mLowText, mLowTempLeft, mTempBaseline, mLowTempPaint);
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        canvas.drawBitmap(mLayer, 0, 0, null);
+        canvas.drawText(mTimeText, mCenterX, mTimeBaseline, mTimePaint);
+    }
+}
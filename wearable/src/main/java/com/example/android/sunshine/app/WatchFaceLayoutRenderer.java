@@ -0,0 +1,127 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.support.v4.content.ContextCompat;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.example.android.sunshine.danga.wearable.watchface.R;
+
+/**
+ * Draws the watch face by laying out watchface_weather_layout off screen and drawing the view
+ * tree onto the canvas.  {@link WatchFaceCanvasRenderer} draws the same face without the views.
+ *
+ * The views are only bound and laid out again in {@link #bind}, which the engine calls when the
+ * {@link WatchFaceState} changed.  In between, {@link #draw} just redraws the laid out tree.
+ */
+public class WatchFaceLayoutRenderer implements WatchFaceRenderer {
+
+    private final View mLayout;
+    private final LinearLayout mContainer;
+    private final TextView mTime;
+    private final TextView mDate;
+    private final TextView mHighTemp;
+    private final TextView mLowTemp;
+    private final ImageView mWeatherIcon;
+
+    private final float mTimeTextSize12Hour;
+    // The time is larger in 24 hour mode, which has no AM/PM to fit.
+    private final float mTimeTextSize24Hour;
+
+    // Colors, resolved once.
+    private final int mBackgroundColor;
+    private final int mTextColor;
+    private final int mSubTextColor;
+    private final int mAmbientBackgroundColor;
+    private final int mAmbientTextColor;
+    private final int mAmbientSubTextColor;
+
+    private int mWidthSpec;
+    private int mHeightSpec;
+    private int mIconResourceId;
+
+    public WatchFaceLayoutRenderer(Context context) {
+        mLayout = LayoutInflater.from(context).inflate(R.layout.watchface_weather_layout, null);
+        mContainer = (LinearLayout) mLayout.findViewById(R.id.watchface_container);
+        mTime = (TextView) mLayout.findViewById(R.id.watch_time_textView);
+        mDate = (TextView) mLayout.findViewById(R.id.watch_date_textView);
+        mWeatherIcon = (ImageView) mLayout.findViewById(R.id.watch_weather_desc_imageView);
+        mHighTemp = (TextView) mLayout.findViewById(R.id.watch_high_temp_textView);
+        mLowTemp = (TextView) mLayout.findViewById(R.id.watch_low_temp_textView);
+        mTimeTextSize12Hour = mTime.getTextSize();
+        mTimeTextSize24Hour = context.getResources()
+                .getDimension(R.dimen.watchface_time_text_size_24_hour);
+
+        mBackgroundColor = ContextCompat.getColor(context, R.color.primary_bgr);
+        mTextColor = ContextCompat.getColor(context, R.color.primary_text_color);
+        mSubTextColor = ContextCompat.getColor(context, R.color.primary_sub_text_color);
+        mAmbientBackgroundColor = ContextCompat.getColor(context, R.color.ambient_bgr_color);
+        mAmbientTextColor = ContextCompat.getColor(context, R.color.ambient_text_color);
+        mAmbientSubTextColor = ContextCompat.getColor(context, R.color.ambient_sub_text_color);
+    }
+
+    @Override
+    public void setSize(int width, int height) {
+        mWidthSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        mHeightSpec = View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY);
+    }
+
+    @Override
+    public void setAntiAlias(boolean antiAlias) {
+        mTime.getPaint().setAntiAlias(antiAlias);
+        mHighTemp.getPaint().setAntiAlias(antiAlias);
+        mLowTemp.getPaint().setAntiAlias(antiAlias);
+    }
+
+    /**
+     * Copies the state into the views and lays them out again.
+     */
+    @Override
+    public void bind(WatchFaceState state) {
+        boolean ambient = state.isAmbient();
+        mContainer.setBackgroundColor(ambient ? mAmbientBackgroundColor : mBackgroundColor);
+
+        mTime.setText(state.getTimeText());
+        mTime.setTextColor(ambient ? mAmbientTextColor : mTextColor);
+        if (state.is24Hour()) {
+            mTime.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTimeTextSize24Hour);
+        } else {
+            mTime.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTimeTextSize12Hour);
+        }
+
+        mDate.setVisibility(ambient ? View.GONE : View.VISIBLE);
+        mDate.setText(state.getDateText());
+
+        if (state.hasWeather()) {
+            mHighTemp.setVisibility(View.VISIBLE);
+            mHighTemp.setText(state.getHighText());
+            mHighTemp.setTextColor(ambient ? mAmbientTextColor : mTextColor);
+            mLowTemp.setVisibility(View.VISIBLE);
+            mLowTemp.setText(state.getLowText());
+            mLowTemp.setTextColor(ambient ? mAmbientSubTextColor : mSubTextColor);
+            mWeatherIcon.setVisibility(ambient ? View.GONE : View.VISIBLE);
+            if (state.getIconResourceId() != mIconResourceId) {
+                mIconResourceId = state.getIconResourceId();
+                mWeatherIcon.setImageResource(mIconResourceId);
+            }
+        } else {
+            // No weather yet, or the forecast ran out: hide the row, like the canvas renderer.
+            mHighTemp.setVisibility(View.GONE);
+            mLowTemp.setVisibility(View.GONE);
+            mWeatherIcon.setVisibility(View.GONE);
+        }
+
+        mLayout.measure(mWidthSpec, mHeightSpec);
+        mLayout.layout(0, 0, mLayout.getMeasuredWidth(), mLayout.getMeasuredHeight());
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        mLayout.draw(canvas);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Canvas;
+
+/**
+ * Draws a {@link WatchFaceState}.
+ *
+ * The engine calls {@link #bind} only when the state changed, so that is where a renderer does
+ * its formatting and layout; {@link #draw} runs every frame and shouldn't allocate.
+ */
+public interface WatchFaceRenderer {
+
+    void setSize(int width, int height);
+
+    void setAntiAlias(boolean antiAlias);
+
+    /**
+     * Takes in a changed state and lays the face out for it.
+     */
+    void bind(WatchFaceState state);
+
+    void draw(Canvas canvas);
+}
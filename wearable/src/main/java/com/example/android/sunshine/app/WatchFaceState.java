@@ -0,0 +1,210 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.format.DateFormat;
+
+import com.example.android.sunshine.danga.wearable.watchface.R;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * What the watch face shows, formatted and ready to draw.
+ *
+ * Text is only formatted again when what it depends on changes: the time once a minute, the
+ * date once a day, the temperatures when new weather arrives or the day changes.  Between those,
+ * {@link #update} is a few comparisons, so drawing a frame allocates nothing.
+ */
+public class WatchFaceState {
+
+    static final int INVALID_WEATHER_ID = 2000;
+    static final double INVALID_TEMP = 1000;
+
+    private static final String TIME_FORMAT_24_HOUR = "HH:mm";
+    private static final String TIME_FORMAT_12_HOUR = "h:mm a";
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    private final Context mContext;
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat(Util.DATE_FORMAT);
+    private SimpleDateFormat mTimeFormat;
+
+    // What the text was last formatted for.
+    private long mMinute = -1;
+    private int mDay = -1;
+    private boolean mAmbient;
+    // Set when something changed outside of update(), like the weather.
+    private boolean mDirty = true;
+
+    private boolean m24Hour;
+    private String mTimeText;
+    private String mDateText;
+
+    private int mWeatherId = INVALID_WEATHER_ID;
+    private double mHighTemp = INVALID_TEMP;
+    private double mLowTemp = INVALID_TEMP;
+    private String mHighText;
+    private String mLowText;
+    private int mIconResourceId = R.drawable.ic_clear;
+
+    // The forecast the weather is picked from, and the day it was picked for.
+    private WearableForecast mForecast;
+    private int mForecastDay;
+
+    public WatchFaceState(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Brings the text up to date for a frame drawn at the given time.
+     *
+     * @return true if anything shown changed since the last call, and the face needs binding or
+     * laying out again
+     */
+    public boolean update(long nowMillis, boolean ambient) {
+        boolean changed = mDirty || ambient != mAmbient;
+        mAmbient = ambient;
+
+        long minute = nowMillis / MINUTE_MILLIS;
+        if (minute != mMinute) {
+            mMinute = minute;
+            mCalendar.setTimeInMillis(nowMillis);
+
+            boolean is24Hour = is24HourFormat();
+            if (mTimeFormat == null || is24Hour != m24Hour) {
+                m24Hour = is24Hour;
+                mTimeFormat = new SimpleDateFormat(
+                        is24Hour ? TIME_FORMAT_24_HOUR : TIME_FORMAT_12_HOUR);
+                mTimeFormat.setTimeZone(mCalendar.getTimeZone());
+            }
+            mTimeText = mTimeFormat.format(mCalendar.getTime());
+
+            int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (day != mDay) {
+                mDay = day;
+                mDateText = mDateFormat.format(mCalendar.getTime());
+            }
+            if (mForecast != null) {
+                showForecastFor(WearableForecast.getEpochDay(nowMillis, mCalendar.getTimeZone()));
+            }
+            changed = true;
+        }
+        // Picking the day's forecast above may have set it again.
+        mDirty = false;
+        return changed;
+    }
+
+    /**
+     * @return true if the user asked for 24 hour time, looked up once a minute
+     */
+    boolean is24HourFormat() {
+        return DateFormat.is24HourFormat(mContext);
+    }
+
+    /**
+     * Shows today's weather out of the forecast from now on, and the next day's after midnight.
+     */
+    public void setForecast(WearableForecast forecast) {
+        mForecast = forecast;
+        mForecastDay = Integer.MIN_VALUE;
+        // Pick the day on the next frame.
+        mMinute = -1;
+    }
+
+    // Shows the forecast for the day, or no weather once the forecast has run out.
+    private void showForecastFor(int epochDay) {
+        if (epochDay == mForecastDay) {
+            return;
+        }
+        mForecastDay = epochDay;
+        int i = mForecast.indexOfDay(epochDay);
+        if (i >= 0) {
+            setWeather(mForecast.getWeatherId(i), mForecast.getHigh(i), mForecast.getLow(i));
+        } else {
+            setWeather(INVALID_WEATHER_ID, INVALID_TEMP, INVALID_TEMP);
+        }
+    }
+
+    /**
+     * Formats the temperatures, if they are not the ones already shown.
+     */
+    public void setWeather(int weatherId, double highTemp, double lowTemp) {
+        if (weatherId == mWeatherId && highTemp == mHighTemp && lowTemp == mLowTemp) {
+            return;
+        }
+        mWeatherId = weatherId;
+        mHighTemp = highTemp;
+        mLowTemp = lowTemp;
+        if (hasWeather()) {
+            mHighText = Util.formatTemperature(highTemp);
+            mLowText = Util.formatTemperature(lowTemp);
+            int iconResourceId = Util.getIconResourceForWeatherCondition(weatherId);
+            if (iconResourceId != -1) {
+                mIconResourceId = iconResourceId;
+            }
+        }
+        mDirty = true;
+    }
+
+    /**
+     * Switches to a new time zone, and formats the time and date again on the next frame.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        if (mTimeFormat != null) {
+            mTimeFormat.setTimeZone(timeZone);
+        }
+        mMinute = -1;
+        mDay = -1;
+    }
+
+    /**
+     * Makes the next {@link #update} report a change, for when the face needs laying out again
+     * for another reason, like a new size.
+     */
+    public void invalidate() {
+        mDirty = true;
+    }
+
+    public boolean hasWeather() {
+        return mHighTemp != INVALID_TEMP && mLowTemp != INVALID_TEMP;
+    }
+
+    public boolean isAmbient() {
+        return mAmbient;
+    }
+
+    public boolean is24Hour() {
+        return m24Hour;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public String getTimeText() {
+        return mTimeText;
+    }
+
+    public String getDateText() {
+        return mDateText;
+    }
+
+    /**
+     * @return the high temperature, or null if there is no weather yet
+     */
+    public String getHighText() {
+        return mHighText;
+    }
+
+    public String getLowText() {
+        return mLowText;
+    }
+
+    public int getIconResourceId() {
+        return mIconResourceId;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.android.sunshine.app;
+
+import java.util.TimeZone;
+
+/**
+ * The preferred location's forecast, as the phone's WearableForecastEncoder packs it: a version,
+ * the number of days, then for each day the days since the previous one, the weather condition
+ * code, the high temperature and the high minus the low, all as varints with the temperatures
+ * zigzag coded in tenths of a degree.
+ *
+ * Holding every synced day lets the watch move on to the next day's weather by itself after
+ * midnight, without waiting for the phone.
+ */
+public class WearableForecast {
+
+    static final int VERSION = 1;
+
+    private static final int TEMPERATURE_SCALE = 10;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+    // The smallest a day can be, one byte for each of its four fields.
+    private static final int MIN_DAY_BYTES = 4;
+
+    private final int[] mEpochDays;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+
+    private WearableForecast(int size) {
+        mEpochDays = new int[size];
+        mWeatherIds = new int[size];
+        mHighs = new double[size];
+        mLows = new double[size];
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is cut short or from another version
+     */
+    public static WearableForecast decode(byte[] payload) {
+        Reader reader = new Reader(payload);
+        int version = reader.readVarint();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported forecast version " + version);
+        }
+        int size = reader.readVarint();
+        if (size < 0 || size > reader.remaining() / MIN_DAY_BYTES) {
+            throw new IllegalArgumentException("Forecast of " + size + " days in "
+                    + payload.length + " bytes");
+        }
+
+        WearableForecast forecast = new WearableForecast(size);
+        int epochDay = 0;
+        for (int i = 0; i < size; i++) {
+            epochDay += reader.readVarint();
+            int weatherId = reader.readVarint();
+            int high = unzigzag(reader.readVarint());
+            int low = high - unzigzag(reader.readVarint());
+            forecast.mEpochDays[i] = epochDay;
+            forecast.mWeatherIds[i] = weatherId;
+            forecast.mHighs[i] = (double) high / TEMPERATURE_SCALE;
+            forecast.mLows[i] = (double) low / TEMPERATURE_SCALE;
+        }
+        return forecast;
+    }
+
+    /**
+     * @return the day the given time falls on in the time zone, counted from 1970-01-01
+     */
+    public static int getEpochDay(long millis, TimeZone timeZone) {
+        long local = millis + timeZone.getOffset(millis);
+        // Round towards the earlier day before 1970 too.
+        return (int) (local >= 0 ? local / DAY_MILLIS : (local - DAY_MILLIS + 1) / DAY_MILLIS);
+    }
+
+    /**
+     * @return the position of the day, or -1 if the forecast doesn't cover it
+     */
+    public int indexOfDay(int epochDay) {
+        for (int i = 0; i < mEpochDays.length; i++) {
+            if (mEpochDays[i] == epochDay) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return mEpochDays.length;
+    }
+
+    public int getEpochDay(int i) {
+        return mEpochDays[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public double getHigh(int i) {
+        return mHighs[i];
+    }
+
+    public double getLow(int i) {
+        return mLows[i];
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Reader {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        Reader(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        int remaining() {
+            return mBytes.length - mPosition;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (mPosition >= mBytes.length) {
+                    throw new IllegalArgumentException("Forecast cut short at byte " + mPosition);
+                }
+                int b = mBytes[mPosition++];
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at byte " + mPosition);
+        }
+    }
+}